@@ -2,12 +2,17 @@ package com.bfwg;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 
 @SpringBootApplication
 public class Application {
 
 	public static void main(String[] args) {
-		SpringApplication.run(Application.class, args);
+		ConfigurableApplicationContext context = SpringApplication.run(Application.class, args);
+		// training run for the class data sharing archive, see the cds profile
+		if (Boolean.getBoolean("app.exit-after-startup")) {
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 }
 
@@ -0,0 +1,77 @@
+package com.bfwg.common;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mobile.device.Device;
+import org.springframework.mobile.device.DeviceResolver;
+import org.springframework.mobile.device.LiteDeviceResolver;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the classification per User-Agent, clients send only a handful of them.
+ * Requests carrying one of the other headers LiteDeviceResolver looks at are resolved
+ * without the cache, since the User-Agent alone does not decide their device.
+ */
+@Component
+public class CachingDeviceResolver implements DeviceResolver {
+
+    private final DeviceResolver delegate;
+
+    private final int maxSize;
+
+    private final ConcurrentMap<String, Device> devices = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CachingDeviceResolver(@Value("${app.device-cache.max-size:1000}") int maxSize) {
+        this(new LiteDeviceResolver(), maxSize);
+    }
+
+    CachingDeviceResolver(DeviceResolver delegate, int maxSize) {
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public Device resolveDevice(HttpServletRequest request) {
+        if (!decidedByUserAgent(request)) {
+            return delegate.resolveDevice(request);
+        }
+        String userAgent = request.getHeader("User-Agent");
+        String key = userAgent != null ? userAgent : "";
+        Device device = devices.get(key);
+        if (device == null) {
+            device = delegate.resolveDevice(request);
+            // a full cache stops learning rather than letting random user agents grow it
+            if (devices.size() < maxSize) {
+                devices.putIfAbsent(key, device);
+            }
+        }
+        return device;
+    }
+
+    int size() {
+        return devices.size();
+    }
+
+    private static boolean decidedByUserAgent(HttpServletRequest request) {
+        if (request.getHeader("x-wap-profile") != null || request.getHeader("Profile") != null) {
+            return false;
+        }
+        String accept = request.getHeader("Accept");
+        if (accept != null && accept.contains("wap")) {
+            return false;
+        }
+        Enumeration<String> headers = request.getHeaderNames();
+        while (headers != null && headers.hasMoreElements()) {
+            if (headers.nextElement().contains("OperaMini")) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
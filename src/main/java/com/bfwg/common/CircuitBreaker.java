@@ -0,0 +1,115 @@
+package com.bfwg.common;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens after {@code failureThreshold} consecutive failures and rejects calls for
+ * {@code openMillis}. After that one call at a time is let through as a trial, and only
+ * the outcome of the trial closes the breaker again or restarts the open period.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final AtomicBoolean trialRunning = new AtomicBoolean();
+
+    // 0 while closed
+    private final AtomicLong openedAt = new AtomicLong();
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return the permit to report the call's outcome on and to release in a finally
+     * block, or null if the call must not go ahead
+     */
+    public Permit allowRequest() {
+        long opened = openedAt.get();
+        if (opened == 0) {
+            return new Permit(false);
+        }
+        if (System.currentTimeMillis() - opened >= openMillis && trialRunning.compareAndSet(false, true)) {
+            return new Permit(true);
+        }
+        return null;
+    }
+
+    public State getState() {
+        long opened = openedAt.get();
+        if (opened == 0) {
+            return State.CLOSED;
+        }
+        return System.currentTimeMillis() - opened >= openMillis ? State.HALF_OPEN : State.OPEN;
+    }
+
+    /**
+     * One admitted call. Outcomes of calls admitted while the breaker was closed are
+     * ignored once it has opened, so a slow call cannot interfere with the trial.
+     */
+    public final class Permit {
+
+        private final boolean trial;
+
+        private boolean done;
+
+        private Permit(boolean trial) {
+            this.trial = trial;
+        }
+
+        public void onSuccess() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (trial) {
+                consecutiveFailures.set(0);
+                openedAt.set(0);
+                trialRunning.set(false);
+            } else if (openedAt.get() == 0) {
+                consecutiveFailures.set(0);
+            }
+        }
+
+        public void onFailure() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (trial) {
+                // a failed trial restarts the open period
+                openedAt.set(System.currentTimeMillis());
+                trialRunning.set(false);
+            } else if (openedAt.get() == 0 && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+                openedAt.compareAndSet(0, System.currentTimeMillis());
+            }
+        }
+
+        /**
+         * Frees the trial slot when no outcome was reported, e.g. because the call threw
+         * an Error or ended in a way that says nothing about the guarded resource.
+         */
+        public void release() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (trial) {
+                trialRunning.set(false);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.bfwg.common;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mobile.device.Device;
 import org.springframework.mobile.device.DeviceUtils;
 import org.springframework.stereotype.Component;
@@ -12,7 +13,18 @@ import javax.servlet.http.HttpServletRequest;
 @Component
 public class DeviceProvider {
 
+    @Autowired
+    private CachingDeviceResolver deviceResolver;
+
+    /**
+     * Resolves the device on first use only, most endpoints never need it.
+     */
     public Device getCurrentDevice(HttpServletRequest request) {
-        return DeviceUtils.getCurrentDevice(request);
+        Device device = DeviceUtils.getCurrentDevice(request);
+        if (device == null) {
+            device = deviceResolver.resolveDevice(request);
+            request.setAttribute(DeviceUtils.CURRENT_DEVICE_ATTRIBUTE, device);
+        }
+        return device;
     }
 }
@@ -0,0 +1,55 @@
+package com.bfwg.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+/**
+ * A fixed JSON error response encoded once and written straight to the servlet
+ * response, without going through sendError and the /error dispatch.
+ */
+public final class PreencodedJsonResponse {
+
+    private final int status;
+
+    private final byte[] body;
+
+    private final String wwwAuthenticate;
+
+    private PreencodedJsonResponse(int status, byte[] body, String wwwAuthenticate) {
+        this.status = status;
+        this.body = body;
+        this.wwwAuthenticate = wwwAuthenticate;
+    }
+
+    /**
+     * {@code error} and {@code message} are written verbatim and must not need JSON escaping.
+     */
+    public static PreencodedJsonResponse of(int status, String error, String message) {
+        return of(status, error, message, null);
+    }
+
+    public static PreencodedJsonResponse of(int status, String error, String message, String wwwAuthenticate) {
+        String json = "{\"status\":" + status + ",\"error\":\"" + error + "\",\"message\":\"" + message + "\"}";
+        return new PreencodedJsonResponse(status, json.getBytes(StandardCharsets.UTF_8), wwwAuthenticate);
+    }
+
+    public void writeTo(HttpServletResponse response) throws IOException {
+        if (response.isCommitted()) {
+            return;
+        }
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        if (wwwAuthenticate != null) {
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, wwwAuthenticate);
+        }
+        response.getOutputStream().write(body);
+        response.flushBuffer();
+    }
+}
@@ -0,0 +1,24 @@
+package com.bfwg.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class BatchConfig {
+
+	/*
+	 * Runs the sub-requests of /api/batch. The reads mostly wait on the database,
+	 * so the pool is not tied to the core count.
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor batchExecutor(@Value("${app.batch.threads:8}") int threads) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(threads * 16);
+		executor.setThreadNamePrefix("batch-");
+		return executor;
+	}
+}
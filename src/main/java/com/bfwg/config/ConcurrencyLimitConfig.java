@@ -0,0 +1,51 @@
+package com.bfwg.config;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.bfwg.limit.AdaptiveConcurrencyLimit;
+import com.bfwg.limit.ConcurrencyLimitFilter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+@ConditionalOnProperty(value = "app.concurrency-limit.enabled", matchIfMissing = true)
+public class ConcurrencyLimitConfig {
+
+	@Value("${app.concurrency-limit.tolerance:1.5}")
+	private double tolerance;
+
+	@Value("${app.concurrency-limit.window:20}")
+	private int window;
+
+	@Value("${app.concurrency-limit.unsampled-paths:/api/admin/users/import,/api/admin/jfr/dump,/api/batch}")
+	private List<String> unsampledPaths;
+
+	/*
+	 * Logins are bcrypt bound, so their limit starts low; API requests mostly wait on the
+	 * database.
+	 */
+	@Bean
+	public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(MeterRegistry meterRegistry,
+			@Value("${app.concurrency-limit.auth.initial:10}") int authInitial,
+			@Value("${app.concurrency-limit.auth.min:2}") int authMin,
+			@Value("${app.concurrency-limit.auth.max:50}") int authMax,
+			@Value("${app.concurrency-limit.api.initial:20}") int apiInitial,
+			@Value("${app.concurrency-limit.api.min:4}") int apiMin,
+			@Value("${app.concurrency-limit.api.max:200}") int apiMax) {
+		ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(
+				new AdaptiveConcurrencyLimit(authInitial, authMin, authMax, tolerance, window),
+				new AdaptiveConcurrencyLimit(apiInitial, apiMin, apiMax, tolerance, window),
+				unsampledPaths, meterRegistry);
+		FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(filter);
+		// ahead of springSecurityFilterChain, rejected requests never reach the token filter
+		registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+		return registration;
+	}
+}
@@ -0,0 +1,36 @@
+package com.bfwg.config;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.bfwg.security.PrecomputedCorsFilter;
+
+@Configuration
+public class CorsConfig {
+
+	/*
+	 * A servlet filter rather than http.cors(): POST /auth/login and the static files
+	 * bypass the security filter chain, and the 503s of the concurrency limit are
+	 * written before it, yet they all need the CORS headers. Preflights do not take a
+	 * concurrency slot either. Disabled while no origin is allowed.
+	 */
+	@Bean
+	public FilterRegistrationBean<PrecomputedCorsFilter> corsFilter(
+			@Value("${app.cors.allowed-origins:}") List<String> allowedOrigins,
+			@Value("${app.cors.allowed-methods:GET,HEAD,POST,PUT,DELETE}") List<String> allowedMethods,
+			@Value("${app.cors.allowed-headers:Authorization,Content-Type}") List<String> allowedHeaders,
+			@Value("${app.cors.exposed-headers:${jwt.renewal.header:X-Renewed-Token},Retry-After,WWW-Authenticate}") List<String> exposedHeaders,
+			@Value("${app.cors.max-age:24h}") Duration maxAge) {
+		FilterRegistrationBean<PrecomputedCorsFilter> registration = new FilterRegistrationBean<>(
+				new PrecomputedCorsFilter(allowedOrigins, allowedMethods, allowedHeaders, exposedHeaders, maxAge));
+		registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 2);
+		registration.setEnabled(!allowedOrigins.isEmpty());
+		return registration;
+	}
+}
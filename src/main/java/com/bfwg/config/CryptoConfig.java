@@ -1,15 +1,39 @@
 package com.bfwg.config;
 
+import java.util.concurrent.ThreadPoolExecutor;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import com.bfwg.jfr.RecordingPasswordEncoder;
+
 @Configuration
 public class CryptoConfig {
 
+	// wrapped for the PasswordHash flight recorder event, a no-op unless it is enabled
 	@Bean
 	public PasswordEncoder passwordEncoder() {
-		return new BCryptPasswordEncoder();
+		return new RecordingPasswordEncoder(new BCryptPasswordEncoder());
+	}
+
+	/*
+	 * Bulk import hashing is CPU bound, so it gets its own pool sized to the cores
+	 * instead of running on (and holding) servlet threads. Each import keeps at most
+	 * one task per thread in flight; past the bounded queue the importing thread
+	 * hashes itself.
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor importHashExecutor() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(cores);
+		executor.setMaxPoolSize(cores);
+		executor.setQueueCapacity(cores * 4);
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.setThreadNamePrefix("import-hash-");
+		return executor;
 	}
 }
@@ -0,0 +1,60 @@
+package com.bfwg.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.bfwg.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+
+/*
+ * Replaces the auto-configured pool with a primary pool (spring.datasource.*)
+ * plus one pool per app.datasource.replicas entry, e.g.
+ *
+ * app.datasource.replicas[0].url=jdbc:postgresql://replica-1/users
+ * app.datasource.replicas[0].username=...
+ */
+@Configuration
+@ConditionalOnProperty("app.datasource.replicas[0].url")
+public class ReplicaRoutingConfig {
+
+	@Bean
+	@Primary
+	public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+		return new LazyConnectionDataSourceProxy(routingDataSource);
+	}
+
+	// closed with the context, which closes the pools
+	@Bean
+	public ReplicaRoutingDataSource routingDataSource(DataSourceProperties primaryProperties,
+			Environment environment) {
+		Binder binder = Binder.get(environment);
+		HikariDataSource primary = pool(primaryProperties, binder, "primary");
+		List<DataSource> replicas = new ArrayList<>();
+		List<DataSourceProperties> replicaProperties = binder
+				.bind("app.datasource.replicas", Bindable.listOf(DataSourceProperties.class)).get();
+		for (int i = 0; i < replicaProperties.size(); i++) {
+			replicas.add(pool(replicaProperties.get(i), binder, "replica-" + i));
+		}
+		return new ReplicaRoutingDataSource(primary, replicas);
+	}
+
+	// every pool takes the spring.datasource.hikari settings
+	private static HikariDataSource pool(DataSourceProperties properties, Binder binder, String name) {
+		HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+		binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+		pool.setPoolName(name);
+		return pool;
+	}
+}
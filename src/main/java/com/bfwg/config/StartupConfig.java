@@ -0,0 +1,45 @@
+package com.bfwg.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.bfwg.security.TokenHelper;
+import com.bfwg.service.impl.KnownUsernameFilter;
+
+/*
+ * Beans for the "startup" profile, which trades eager initialisation for a
+ * faster cold start (see application-startup.yml).
+ */
+@Configuration
+@Profile("startup")
+public class StartupConfig {
+
+	/*
+	 * Everything on the request authentication path stays eager, so the first
+	 * request does not pay for it.
+	 */
+	@Bean
+	public static LazyInitializationExcludeFilter hotPathBeans() {
+		return LazyInitializationExcludeFilter.forBeanTypes(TokenHelper.class, UserDetailsService.class,
+				KnownUsernameFilter.class, PasswordEncoder.class);
+	}
+
+	/*
+	 * Deferred repository bootstrap builds the EntityManagerFactory on the
+	 * executor with this name; without it the only executor bean,
+	 * importHashExecutor, would be picked and bulk imports would queue behind it.
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor applicationTaskExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(1);
+		executor.setMaxPoolSize(1);
+		executor.setThreadNamePrefix("bootstrap-");
+		return executor;
+	}
+}
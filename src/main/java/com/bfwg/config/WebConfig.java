@@ -1,35 +1,43 @@
 package com.bfwg.config;
 
 import java.util.List;
-import org.springframework.context.annotation.Bean;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.mobile.device.DeviceHandlerMethodArgumentResolver;
-import org.springframework.mobile.device.DeviceResolverHandlerInterceptor;
+import org.springframework.core.MethodParameter;
+import org.springframework.mobile.device.Device;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.method.support.HandlerMethodArgumentResolver;
-import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.method.support.ModelAndViewContainer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import com.bfwg.common.DeviceProvider;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
-  @Bean
-  public DeviceResolverHandlerInterceptor deviceResolverHandlerInterceptor() {
-    return new DeviceResolverHandlerInterceptor();
-  }
-
-  @Bean
-  public DeviceHandlerMethodArgumentResolver deviceHandlerMethodArgumentResolver() {
-    return new DeviceHandlerMethodArgumentResolver();
-  }
-
-  @Override
-  public void addInterceptors(InterceptorRegistry registry) {
-    registry.addInterceptor(deviceResolverHandlerInterceptor());
-  }
+  @Autowired
+  private DeviceProvider deviceProvider;
 
+  // no DeviceResolverHandlerInterceptor, only handlers taking a Device resolve one
   @Override
   public void addArgumentResolvers(List<HandlerMethodArgumentResolver> argumentResolvers) {
-    argumentResolvers.add(deviceHandlerMethodArgumentResolver());
+    argumentResolvers.add(new HandlerMethodArgumentResolver() {
+
+      @Override
+      public boolean supportsParameter(MethodParameter parameter) {
+        return Device.class.isAssignableFrom(parameter.getParameterType());
+      }
+
+      @Override
+      public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+          NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        return deviceProvider.getCurrentDevice(webRequest.getNativeRequest(HttpServletRequest.class));
+      }
+    });
   }
 
 }
@@ -1,10 +1,13 @@
 package com.bfwg.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.config.annotation.ObjectPostProcessor;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
@@ -12,13 +15,24 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityCustomizer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.ExceptionTranslationFilter;
 import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+import org.springframework.security.web.context.NullSecurityContextRepository;
 
+import com.bfwg.security.PathAccessMatcher;
+import com.bfwg.security.PathAccessMatcher.Access;
 import com.bfwg.security.TokenHelper;
+import com.bfwg.security.auth.CachingDaoAuthenticationProvider;
+import com.bfwg.security.auth.ClaimsOnlyFallback;
+import com.bfwg.security.auth.RestAccessDeniedHandler;
 import com.bfwg.security.auth.RestAuthenticationEntryPoint;
 import com.bfwg.security.auth.TokenAuthenticationFilter;
+import com.bfwg.security.auth.TokenRenewal;
+import com.bfwg.security.auth.VerifiedCredentialCache;
+import com.bfwg.service.ApiKeyService;
 import com.bfwg.service.impl.CustomUserDetailsService;
 
 /**
@@ -39,10 +53,30 @@ public class WebSecurityConfig {
 	@Autowired
 	private RestAuthenticationEntryPoint restAuthenticationEntryPoint;
 
+	@Autowired
+	private RestAccessDeniedHandler restAccessDeniedHandler;
+
+	@Autowired
+	private TokenRenewal tokenRenewal;
+
+	@Autowired
+	private ApiKeyService apiKeyService;
+
+	@Autowired
+	private VerifiedCredentialCache verifiedCredentialCache;
+
+	@Autowired
+	private ClaimsOnlyFallback claimsOnlyFallback;
+
+	@Value("${app.security.minimal-chain:false}")
+	private boolean minimalChain;
+
 	@Autowired
 	public void configureGlobal(AuthenticationManagerBuilder auth) throws Exception {
-		auth.userDetailsService(jwtUserDetailsService)
-				.passwordEncoder(passwordEncoder);
+		CachingDaoAuthenticationProvider provider = new CachingDaoAuthenticationProvider(verifiedCredentialCache);
+		provider.setUserDetailsService(jwtUserDetailsService);
+		provider.setPasswordEncoder(passwordEncoder);
+		auth.authenticationProvider(provider);
 	}
 
 	@Autowired
@@ -57,45 +91,87 @@ public class WebSecurityConfig {
 	@Bean
 	public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
 		http
-				.sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
-				.exceptionHandling().authenticationEntryPoint(restAuthenticationEntryPoint).and()
-				.authorizeRequests()
-				.antMatchers(
-						HttpMethod.GET,
+				.exceptionHandling()
+				.authenticationEntryPoint(restAuthenticationEntryPoint)
+				.accessDeniedHandler(restAccessDeniedHandler).and()
+				.addFilterBefore(new TokenAuthenticationFilter(tokenHelper, jwtUserDetailsService, tokenRenewal,
+						pathAccessMatcher(), apiKeyService, claimsOnlyFallback), BasicAuthenticationFilter.class);
+
+		http.csrf().disable();
+		if (minimalChain) {
+			configureMinimalChain(http);
+		} else {
+			http
+					.sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
+					.authorizeRequests()
+					.requestMatchers(pathAccessMatcher().matching(Access.ANONYMOUS)).permitAll()
+					.requestMatchers(pathAccessMatcher().matching(Access.PERMIT)).permitAll()
+					.anyRequest().authenticated();
+		}
+		return http.build();
+	}
+
+	/**
+	 * Only what bearer tokens need: the token filter, exception translation and authorization,
+	 * plus clearing the security context after the request and exposing it as the request's
+	 * user principal. No session management, request cache, anonymous authentication, logout
+	 * or security headers.
+	 */
+	private void configureMinimalChain(HttpSecurity http) throws Exception {
+		http
+				.securityContext()
+				.securityContextRepository(new NullSecurityContextRepository())
+				.requireExplicitSave(true).and()
+				.sessionManagement().disable()
+				.requestCache().disable()
+				.anonymous().disable()
+				.logout().disable()
+				.headers().disable()
+				.exceptionHandling()
+				// with no anonymous token, a missing authentication must still get the 401
+				.withObjectPostProcessor(new ObjectPostProcessor<ExceptionTranslationFilter>() {
+					@Override
+					public <O extends ExceptionTranslationFilter> O postProcess(O filter) {
+						filter.setAuthenticationTrustResolver(new AuthenticationTrustResolverImpl() {
+							@Override
+							public boolean isAnonymous(Authentication authentication) {
+								return authentication == null || super.isAnonymous(authentication);
+							}
+						});
+						return filter;
+					}
+				}).and()
+				// unlike authorizeRequests, permitted paths do not require an authentication
+				.authorizeHttpRequests()
+				.requestMatchers(pathAccessMatcher().matching(Access.ANONYMOUS)).permitAll()
+				.requestMatchers(pathAccessMatcher().matching(Access.PERMIT)).permitAll()
+				.anyRequest().authenticated();
+	}
+
+	/**
+	 * Which paths bypass security, are public, or need a token, decided in one pass.
+	 */
+	@Bean
+	public PathAccessMatcher pathAccessMatcher() {
+		return new PathAccessMatcher()
+				// TokenAuthenticationFilter never sees these
+				.add(HttpMethod.POST, Access.IGNORE, "/auth/login")
+				.add(HttpMethod.GET, Access.IGNORE,
 						"/",
-						"/auth/**",
+						"/.well-known/jwks.json",
 						"/webjars/**",
 						"/*.html",
 						"/favicon.ico",
 						"/**/*.html",
 						"/**/*.css",
 						"/**/*.js")
-				.permitAll()
-				.antMatchers("/auth/**").permitAll()
-				.anyRequest().authenticated().and()
-				.addFilterBefore(new TokenAuthenticationFilter(tokenHelper, jwtUserDetailsService),
-						BasicAuthenticationFilter.class);
-
-		http.csrf().disable();
-		return http.build();
+				.add(HttpMethod.GET, Access.ANONYMOUS, "/actuator/health", "/actuator/health/**")
+				// refresh and change-password still authenticate the token
+				.add(Access.PERMIT, "/auth/**");
 	}
 
 	@Bean
 	public WebSecurityCustomizer webSecurityCustomizer() {
-		// TokenAuthenticationFilter will ignore the below paths
-		return (web) -> {
-			web.ignoring().antMatchers(
-					HttpMethod.POST,
-					"/auth/login");
-			web.ignoring().antMatchers(
-					HttpMethod.GET,
-					"/",
-					"/webjars/**",
-					"/*.html",
-					"/favicon.ico",
-					"/**/*.html",
-					"/**/*.css",
-					"/**/*.js");
-		};
+		return (web) -> web.ignoring().requestMatchers(pathAccessMatcher().matching(Access.IGNORE));
 	}
 }
@@ -0,0 +1,82 @@
+package com.bfwg.datasource;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.bfwg.model.User;
+
+/**
+ * Remembers users written on this node for a short while, so their reads are
+ * served by the primary until the replicas have caught up. Reads forced to the
+ * primary are marked per thread and honoured by {@link ReplicaRoutingDataSource}.
+ */
+@Component
+public class ReadYourWrites {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private final Map<String, Long> recentWrites = new ConcurrentHashMap<>();
+
+    private final long stickyNanos;
+
+    public ReadYourWrites(@Value("${app.datasource.sticky-for:10s}") Duration stickyFor) {
+        this.stickyNanos = stickyFor.toNanos();
+    }
+
+    public void recordWrite(String username) {
+        long now = System.nanoTime();
+        if (recentWrites.size() >= PURGE_THRESHOLD) {
+            recentWrites.values().removeIf(until -> until - now < 0);
+        }
+        recentWrites.put(User.normalizeUsername(username), now + stickyNanos);
+    }
+
+    public boolean isRecentlyWritten(String username) {
+        if (username == null || recentWrites.isEmpty()) {
+            return false;
+        }
+        String key = User.normalizeUsername(username);
+        Long until = recentWrites.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (until - System.nanoTime() < 0) {
+            recentWrites.remove(key, until);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads of {@code username} on the primary if it was written recently, else
+     * wherever the transaction routes them.
+     */
+    public <T> T read(String username, Supplier<T> action) {
+        return isRecentlyWritten(username) ? onPrimary(action) : action.get();
+    }
+
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = PRIMARY_REQUIRED.get();
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_REQUIRED.remove();
+            } else {
+                PRIMARY_REQUIRED.set(previous);
+            }
+        }
+    }
+
+    static boolean isPrimaryRequired() {
+        return PRIMARY_REQUIRED.get() != null;
+    }
+}
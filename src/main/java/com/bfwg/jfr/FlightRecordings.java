@@ -0,0 +1,91 @@
+package com.bfwg.jfr;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Component;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * Holds the single on-demand recording driven by the admin endpoint. The
+ * application events are disabled in the JDK settings and only switched on here.
+ */
+@Component
+public class FlightRecordings {
+
+    static final List<Class<? extends Event>> APPLICATION_EVENTS = Arrays.asList(
+            TokenSignEvent.class, TokenVerifyEvent.class, TokenFilterEvent.class,
+            UserLookupEvent.class, PasswordHashEvent.class);
+
+    private static final long MAX_SIZE_BYTES = 64 * 1024 * 1024;
+
+    private Recording recording;
+
+    /**
+     * @param settings name of a JDK configuration, "default" or "profile"
+     * @return false if a recording is already running
+     */
+    public synchronized boolean start(String settings, Duration maxAge) throws IOException, ParseException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            return false;
+        }
+        if (recording != null) {
+            recording.close();
+        }
+        Recording started = new Recording(Configuration.getConfiguration(settings));
+        started.setName("bfwg-on-demand");
+        started.setMaxAge(maxAge);
+        started.setMaxSize(MAX_SIZE_BYTES);
+        for (Class<? extends Event> event : APPLICATION_EVENTS) {
+            started.enable(event).withoutStackTrace();
+        }
+        started.start();
+        recording = started;
+        return true;
+    }
+
+    /**
+     * Stops the recording, which stays available for {@link #dump(Path)}.
+     */
+    public synchronized boolean stop() {
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            return false;
+        }
+        return recording.stop();
+    }
+
+    /**
+     * Writes the data recorded so far to {@code destination}.
+     */
+    public synchronized boolean dump(Path destination) throws IOException {
+        if (recording == null || recording.getState() == RecordingState.CLOSED) {
+            return false;
+        }
+        Files.deleteIfExists(destination);
+        recording.dump(destination);
+        return true;
+    }
+
+    public synchronized String state() {
+        return recording == null ? "NONE" : recording.getState().name();
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+}
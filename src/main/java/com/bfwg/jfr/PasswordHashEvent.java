@@ -0,0 +1,24 @@
+package com.bfwg.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.bfwg.PasswordHash")
+@Label("Password Hash")
+@Description("PasswordEncoder encode or matches call")
+@Category({ "Application", "Security" })
+@Enabled(false)
+@StackTrace(false)
+public class PasswordHashEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Matched")
+    public boolean matched;
+}
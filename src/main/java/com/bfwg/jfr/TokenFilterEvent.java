@@ -0,0 +1,31 @@
+package com.bfwg.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.bfwg.TokenFilter")
+@Label("Token Authentication Filter")
+@Description("Time spent authenticating a request in TokenAuthenticationFilter, excluding the rest of the chain")
+@Category({ "Application", "Security" })
+@Enabled(false)
+@StackTrace(false)
+public class TokenFilterEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Outcome")
+    @Description("AUTHENTICATED, NO_TOKEN, UNKNOWN_USER, STALE_TOKEN, API_KEY, INVALID_API_KEY, "
+            + "CLAIMS_ONLY, USER_STORE_UNAVAILABLE "
+            + "or the TokenStatus of a rejected token")
+    public String outcome;
+
+    @Label("User Lookup")
+    @Description("Whether the user had to be loaded through the UserDetailsService")
+    public boolean userLookup;
+}
@@ -0,0 +1,24 @@
+package com.bfwg.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.bfwg.TokenSign")
+@Label("Token Sign")
+@Description("Signing of an issued or refreshed JWT")
+@Category({ "Application", "Security" })
+@Enabled(false)
+@StackTrace(false)
+public class TokenSignEvent extends Event {
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    @Label("Token Length")
+    public int tokenLength;
+}
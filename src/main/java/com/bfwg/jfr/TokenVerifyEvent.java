@@ -0,0 +1,25 @@
+package com.bfwg.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.bfwg.TokenVerify")
+@Label("Token Verify")
+@Description("Pre-checks and signature verification of a presented JWT")
+@Category({ "Application", "Security" })
+@Enabled(false)
+@StackTrace(false)
+public class TokenVerifyEvent extends Event {
+
+    @Label("Token Length")
+    public int tokenLength;
+
+    @Label("Outcome")
+    @Description("TokenStatus of the verification")
+    public String outcome;
+}
@@ -0,0 +1,25 @@
+package com.bfwg.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.bfwg.UserLookup")
+@Label("User Lookup")
+@Description("CustomUserDetailsService.loadUserByUsername")
+@Category({ "Application", "Security" })
+@Enabled(false)
+@StackTrace(false)
+public class UserLookupEvent extends Event {
+
+    @Label("Found")
+    public boolean found;
+
+    @Label("Rejected By Filter")
+    @Description("Unknown name rejected by the username Bloom filter without a query")
+    public boolean rejectedByFilter;
+}
@@ -0,0 +1,121 @@
+package com.bfwg.limit;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrency limit that follows the measured latency, in the spirit of the gradient
+ * algorithm of Netflix' concurrency-limits.
+ *
+ * The median latency of windows of {@code windowSize} requests is compared with a slowly
+ * moving long-term average of those medians, so a single slow request does not skew either. While the two agree and the limit is actually used,
+ * the limit grows by its square root per window; when the window latency exceeds the
+ * long-term one by more than {@code tolerance}, requests are queueing somewhere and the
+ * limit shrinks proportionally, by at most half per window.
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    // windows the long-term latency averages over
+    private static final int LONG_WINDOW = 10;
+
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private final int windowSize;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int limit;
+
+    // guarded by this
+    private double estimatedLimit;
+    private double longRtt;
+    private final long[] windowRtts;
+    private int windowCount;
+    private int windowMaxInFlight;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, int windowSize) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Expected 1 <= min <= initial <= max, got "
+                    + minLimit + ", " + initialLimit + ", " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.windowSize = windowSize;
+        this.windowRtts = new long[windowSize];
+        this.estimatedLimit = initialLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * @return false when the limit is reached, otherwise the caller must {@link #release} once done
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    public void release(long rttNanos) {
+        sample(rttNanos, inFlight.getAndDecrement());
+    }
+
+    /**
+     * Frees the slot without sampling, for requests whose duration says nothing about load,
+     * such as streaming uploads and downloads.
+     */
+    public void releaseUnsampled() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void sample(long rttNanos, int inFlightAtRelease) {
+        windowRtts[windowCount++] = rttNanos;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtRelease);
+        if (windowCount < windowSize) {
+            return;
+        }
+        Arrays.sort(windowRtts);
+        double shortRtt = windowRtts[windowSize / 2];
+        int maxInFlight = windowMaxInFlight;
+        windowCount = 0;
+        windowMaxInFlight = 0;
+
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt += (shortRtt - longRtt) / LONG_WINDOW;
+        }
+        // once an overload is over, catch up with the lower latency faster
+        if (longRtt > shortRtt * 2) {
+            longRtt *= 0.95;
+        }
+        // an idle limit proves nothing, neither grow nor shrink it
+        if (maxInFlight < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
@@ -0,0 +1,107 @@
+package com.bfwg.limit;
+
+import com.bfwg.common.PreencodedJsonResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Applies separate {@link AdaptiveConcurrencyLimit}s to {@code /auth/**} and {@code /api/**},
+ * ahead of the security filter chain, and answers requests over the limit with an immediate
+ * 503 instead of letting them wait for a database that is already slow. Other paths pass.
+ * The limits, requests in flight and rejections are metrics tagged {@code group=auth|api}.
+ * Long-running paths, such as streaming imports and downloads, still take a slot but are
+ * left out of the latency samples.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final PreencodedJsonResponse OVERLOADED = PreencodedJsonResponse.of(
+            HttpServletResponse.SC_SERVICE_UNAVAILABLE, "overloaded", "Too many concurrent requests, retry shortly");
+
+    private final AdaptiveConcurrencyLimit authLimit;
+
+    private final AdaptiveConcurrencyLimit apiLimit;
+
+    private final Counter authRejected;
+
+    private final Counter apiRejected;
+
+    private final Set<String> unsampledPaths;
+
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimit authLimit, AdaptiveConcurrencyLimit apiLimit,
+                                  MeterRegistry meterRegistry) {
+        this(authLimit, apiLimit, Collections.emptySet(), meterRegistry);
+    }
+
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimit authLimit, AdaptiveConcurrencyLimit apiLimit,
+                                  Collection<String> unsampledPaths, MeterRegistry meterRegistry) {
+        this.authLimit = authLimit;
+        this.apiLimit = apiLimit;
+        this.unsampledPaths = new HashSet<>(unsampledPaths);
+        this.authRejected = register("auth", authLimit, meterRegistry);
+        this.apiRejected = register("api", apiLimit, meterRegistry);
+    }
+
+    private static Counter register(String group, AdaptiveConcurrencyLimit limit, MeterRegistry meterRegistry) {
+        Gauge.builder("http.server.concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit).tag("group", group)
+                .description("Current adaptive concurrency limit").register(meterRegistry);
+        Gauge.builder("http.server.concurrency.in-flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                .tag("group", group).description("Requests currently holding a slot").register(meterRegistry);
+        return Counter.builder("http.server.concurrency.rejected").tag("group", group)
+                .description("Requests answered with 503 over the limit").register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = requestPath(request);
+        AdaptiveConcurrencyLimit limit = path.startsWith("/auth/") ? authLimit
+                : path.startsWith("/api/") ? apiLimit : null;
+        if (limit == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (!limit.tryAcquire()) {
+            (limit == authLimit ? authRejected : apiRejected).increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            OVERLOADED.writeTo(response);
+            return;
+        }
+        if (unsampledPaths.contains(path)) {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                limit.releaseUnsampled();
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            limit.release(System.nanoTime() - start);
+        }
+    }
+
+    private static String requestPath(HttpServletRequest request) {
+        String url = request.getServletPath();
+        String pathInfo = request.getPathInfo();
+        if (pathInfo != null) {
+            url = StringUtils.hasLength(url) ? url + pathInfo : pathInfo;
+        }
+        return url;
+    }
+}
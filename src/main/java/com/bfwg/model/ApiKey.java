@@ -0,0 +1,116 @@
+package com.bfwg.model;
+
+import java.sql.Timestamp;
+import java.util.Set;
+
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.Table;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Long-lived credential of a service account. Only a keyed digest of the key is
+ * stored; the prefix is public and identifies the key without scanning.
+ */
+@Entity
+@Table(name = "API_KEY", indexes = @Index(name = "UK_API_KEY_PREFIX", columnList = "prefix", unique = true))
+public class ApiKey {
+
+	@Id
+	@Column(name = "id")
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	@Column(name = "name", nullable = false)
+	private String name;
+
+	@Column(name = "prefix", nullable = false, length = 16)
+	private String prefix;
+
+	@JsonIgnore
+	@Column(name = "digest", nullable = false)
+	private String digest;
+
+	@ElementCollection(fetch = FetchType.EAGER)
+	@CollectionTable(name = "API_KEY_ROLE", joinColumns = @JoinColumn(name = "api_key_id"))
+	@Enumerated(EnumType.STRING)
+	@Column(name = "role")
+	private Set<UserRoleName> roles;
+
+	@Column(name = "created_at", nullable = false)
+	private Timestamp createdAt;
+
+	@Column(name = "revoked_at")
+	private Timestamp revokedAt;
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public void setPrefix(String prefix) {
+		this.prefix = prefix;
+	}
+
+	public String getDigest() {
+		return digest;
+	}
+
+	public void setDigest(String digest) {
+		this.digest = digest;
+	}
+
+	public Set<UserRoleName> getRoles() {
+		return roles;
+	}
+
+	public void setRoles(Set<UserRoleName> roles) {
+		this.roles = roles;
+	}
+
+	public Timestamp getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(Timestamp createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public Timestamp getRevokedAt() {
+		return revokedAt;
+	}
+
+	public void setRevokedAt(Timestamp revokedAt) {
+		this.revokedAt = revokedAt;
+	}
+
+	public boolean isRevoked() {
+		return revokedAt != null;
+	}
+}
@@ -0,0 +1,39 @@
+package com.bfwg.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * What a credential says about its holder: the token subject, the roles claim and when it
+ * was issued, or the name and roles of an API key, which has no issue date. Answered by
+ * {@code /api/whoami} instead of a {@link UserSummary} when there is no user to load; the
+ * authorities serialize in the same shape.
+ */
+public class ClaimsSummary {
+
+    private final String username;
+    private final List<GrantedAuthority> authorities;
+    private final Date issuedAt;
+
+    public ClaimsSummary(String username, Collection<? extends GrantedAuthority> authorities, Date issuedAt) {
+        this.username = username;
+        this.authorities = new ArrayList<>(authorities);
+        this.issuedAt = issuedAt;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public List<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    public Date getIssuedAt() {
+        return issuedAt;
+    }
+}
@@ -0,0 +1,36 @@
+package com.bfwg.model;
+
+import java.util.Set;
+
+/**
+ * A freshly created API key, the only time the key itself is returned.
+ */
+public class NewApiKey {
+    private final ApiKey apiKey;
+    private final String key;
+
+    public NewApiKey(ApiKey apiKey, String key) {
+        this.apiKey = apiKey;
+        this.key = key;
+    }
+
+    public Long getId() {
+        return apiKey.getId();
+    }
+
+    public String getName() {
+        return apiKey.getName();
+    }
+
+    public String getPrefix() {
+        return apiKey.getPrefix();
+    }
+
+    public Set<UserRoleName> getRoles() {
+        return apiKey.getRoles();
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
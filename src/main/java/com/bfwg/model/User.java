@@ -1,8 +1,10 @@
 package com.bfwg.model;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
@@ -11,9 +13,11 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 import org.springframework.security.core.GrantedAuthority;
@@ -26,17 +30,25 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
  */
 
 @Entity
-@Table(name = "USERS")
+@Table(name = "USERS", indexes = @Index(name = "UK_USERS_NORMALIZED_USERNAME", columnList = "normalized_username", unique = true))
 public class User implements UserDetails {
 
+	// pooled sequence instead of IDENTITY so inserts can be JDBC batched,
+	// starting above the ids used by import.sql
 	@Id
 	@Column(name = "id")
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+	@SequenceGenerator(name = "users_seq", sequenceName = "USERS_SEQ", initialValue = 1000, allocationSize = 50)
 	private Long id;
 
 	@Column(name = "username")
 	private String username;
 
+	// lower-cased copy of username backing the unique, case-insensitive lookup
+	@JsonIgnore
+	@Column(name = "normalized_username", nullable = false)
+	private String normalizedUsername;
+
 	@JsonIgnore
 	@Column(name = "password")
 	private String password;
@@ -63,6 +75,25 @@ public class User implements UserDetails {
 	@JoinTable(name = "user_authority", joinColumns = @JoinColumn(name = "user_id", referencedColumnName = "id"), inverseJoinColumns = @JoinColumn(name = "authority_id", referencedColumnName = "id"))
 	private List<Authority> authorities;
 
+	/**
+	 * A detached copy, so callers sharing one lookup cannot see each other's changes.
+	 */
+	public User copy() {
+		User copy = new User();
+		copy.id = id;
+		copy.username = username;
+		copy.normalizedUsername = normalizedUsername;
+		copy.password = password;
+		copy.firstName = firstName;
+		copy.lastName = lastName;
+		copy.email = email;
+		copy.phoneNumber = phoneNumber;
+		copy.enabled = enabled;
+		copy.lastPasswordResetDate = lastPasswordResetDate;
+		copy.authorities = authorities == null ? null : new ArrayList<>(authorities);
+		return copy;
+	}
+
 	public Long getId() {
 		return id;
 	}
@@ -77,6 +108,11 @@ public class User implements UserDetails {
 
 	public void setUsername(String username) {
 		this.username = username;
+		this.normalizedUsername = normalizeUsername(username);
+	}
+
+	public static String normalizeUsername(String username) {
+		return username == null ? null : username.toLowerCase(Locale.ROOT);
 	}
 
 	public String getPassword() {
@@ -0,0 +1,94 @@
+package com.bfwg.model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Read-only view of the exposed user columns, selected directly by
+ * {@link com.bfwg.repository.UserRepository} instead of loading the entity.
+ * Queries return one row per role; {@link #aggregate(List)} folds them per user.
+ */
+@JsonSerialize(using = UserSummarySerializer.class)
+public class UserSummary {
+
+    private final Long id;
+    private final String username;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final String phoneNumber;
+    private final boolean enabled;
+    private final Date lastPasswordResetDate;
+    private final List<UserRoleName> roles = new ArrayList<>(2);
+
+    public UserSummary(Long id, String username, String firstName, String lastName, String email,
+                       String phoneNumber, boolean enabled, Date lastPasswordResetDate, UserRoleName role) {
+        this.id = id;
+        this.username = username;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.phoneNumber = phoneNumber;
+        this.enabled = enabled;
+        this.lastPasswordResetDate = lastPasswordResetDate;
+        if (role != null) {
+            this.roles.add(role);
+        }
+    }
+
+    /**
+     * Merges consecutive rows of the same user into one summary carrying all roles.
+     */
+    public static List<UserSummary> aggregate(List<UserSummary> rows) {
+        List<UserSummary> users = new ArrayList<>(rows.size());
+        UserSummary current = null;
+        for (UserSummary row : rows) {
+            if (current != null && current.id.equals(row.id)) {
+                current.roles.addAll(row.roles);
+            } else {
+                current = row;
+                users.add(row);
+            }
+        }
+        return users;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Date getLastPasswordResetDate() {
+        return lastPasswordResetDate;
+    }
+
+    public List<UserRoleName> getRoles() {
+        return roles;
+    }
+}
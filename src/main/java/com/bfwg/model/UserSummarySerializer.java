@@ -0,0 +1,86 @@
+package com.bfwg.model;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Writes {@link UserSummary} in the same shape the {@link User} entity is
+ * serialized in, with field names encoded once instead of introspected per call.
+ */
+public class UserSummarySerializer extends StdSerializer<UserSummary> {
+
+    private static final long serialVersionUID = 6165339577186233461L;
+
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString USERNAME = new SerializedString("username");
+    private static final SerializedString FIRST_NAME = new SerializedString("firstName");
+    private static final SerializedString LAST_NAME = new SerializedString("lastName");
+    private static final SerializedString EMAIL = new SerializedString("email");
+    private static final SerializedString PHONE_NUMBER = new SerializedString("phoneNumber");
+    private static final SerializedString ENABLED = new SerializedString("enabled");
+    private static final SerializedString LAST_PASSWORD_RESET_DATE = new SerializedString("lastPasswordResetDate");
+    private static final SerializedString AUTHORITIES = new SerializedString("authorities");
+    private static final SerializedString AUTHORITY = new SerializedString("authority");
+
+    private static final Map<UserRoleName, SerializedString> ROLE_NAMES = new EnumMap<>(UserRoleName.class);
+
+    static {
+        for (UserRoleName role : UserRoleName.values()) {
+            ROLE_NAMES.put(role, new SerializedString(role.name()));
+        }
+    }
+
+    public UserSummarySerializer() {
+        super(UserSummary.class);
+    }
+
+    @Override
+    public void serialize(UserSummary user, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(ID);
+        if (user.getId() == null) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(user.getId());
+        }
+        writeString(gen, USERNAME, user.getUsername());
+        writeString(gen, FIRST_NAME, user.getFirstName());
+        writeString(gen, LAST_NAME, user.getLastName());
+        writeString(gen, EMAIL, user.getEmail());
+        writeString(gen, PHONE_NUMBER, user.getPhoneNumber());
+        gen.writeFieldName(ENABLED);
+        gen.writeBoolean(user.isEnabled());
+        gen.writeFieldName(LAST_PASSWORD_RESET_DATE);
+        if (user.getLastPasswordResetDate() == null) {
+            gen.writeNull();
+        } else {
+            // honours the configured date format, like the entity serialization
+            provider.defaultSerializeDateValue(user.getLastPasswordResetDate(), gen);
+        }
+        gen.writeFieldName(AUTHORITIES);
+        gen.writeStartArray();
+        for (UserRoleName role : user.getRoles()) {
+            gen.writeStartObject();
+            gen.writeFieldName(AUTHORITY);
+            gen.writeString(ROLE_NAMES.get(role));
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator gen, SerializedString name, String value) throws IOException {
+        gen.writeFieldName(name);
+        if (value == null) {
+            gen.writeNull();
+        } else {
+            gen.writeString(value);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.bfwg.repository;
+
+import com.bfwg.model.ApiKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Transactional(readOnly = true)
+public interface ApiKeyRepository extends JpaRepository<ApiKey, Long> {
+
+    List<ApiKey> findByRevokedAtIsNull();
+}
@@ -1,12 +1,69 @@
 package com.bfwg.repository;
 
 import com.bfwg.model.User;
+import com.bfwg.model.UserSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
+import java.sql.Timestamp;
+import java.util.List;
 
 /**
  * Created by fan.jin on 2016-10-15.
+ *
+ * Reads run in read-only transactions so they can be served by a replica.
  */
+@Transactional(readOnly = true)
 public interface UserRepository extends JpaRepository<User, Long> {
-    User findByUsername( String username );
-}
+    /**
+     * The authentication lookup gives up after this long, well below app.user-lookup.timeout,
+     * so a failing store trips the breaker of ClaimsOnlyFallback quickly. Other queries keep
+     * the driver default.
+     */
+    String LOOKUP_TIMEOUT_MILLIS = "2000";
+
+    @QueryHints(@QueryHint(name = "javax.persistence.query.timeout", value = LOOKUP_TIMEOUT_MILLIS))
+    User findByNormalizedUsername( String normalizedUsername );
+
+    /**
+     * Case-insensitive lookup, served by the unique index on the normalized username.
+     */
+    default User findByUsername( String username ) {
+        return username == null ? null : findByNormalizedUsername( User.normalizeUsername( username ) );
+    }
+
+    String SUMMARY_SELECT = "select new com.bfwg.model.UserSummary(u.id, u.username, u.firstName, u.lastName, " +
+            "u.email, u.phoneNumber, u.enabled, u.lastPasswordResetDate, a.name) " +
+            "from User u left join u.authorities a ";
 
+    /*
+     * The summary queries select only the exposed columns, one row per role,
+     * to be folded with UserSummary.aggregate.
+     */
+    @Query(SUMMARY_SELECT + "where u.id = :id")
+    List<UserSummary> findSummaryRowsById(@Param("id") Long id);
+
+    @Query(SUMMARY_SELECT + "where u.normalizedUsername = :normalizedUsername")
+    List<UserSummary> findSummaryRowsByNormalizedUsername(@Param("normalizedUsername") String normalizedUsername);
+
+    @Query(SUMMARY_SELECT + "order by u.id")
+    List<UserSummary> findAllSummaryRows();
+
+    /**
+     * Swaps the password hash only if it still is {@code oldPassword}, so a concurrent
+     * change makes this a no-op instead of a lost update. Returns the updated row count.
+     */
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :newPassword, u.lastPasswordResetDate = :resetDate " +
+            "where u.id = :id and u.password = :oldPassword")
+    int updatePassword(@Param("id") Long id,
+                       @Param("oldPassword") String oldPassword,
+                       @Param("newPassword") String newPassword,
+                       @Param("resetDate") Timestamp resetDate);
+}
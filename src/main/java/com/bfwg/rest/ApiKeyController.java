@@ -0,0 +1,81 @@
+package com.bfwg.rest;
+
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.bfwg.model.ApiKey;
+import com.bfwg.model.NewApiKey;
+import com.bfwg.model.UserRoleName;
+import com.bfwg.service.ApiKeyService;
+
+/*
+ * Issues and revokes service account API keys. Clients send a key like a token,
+ * "Authorization: Bearer bfwg_...".
+ */
+@RestController
+@RequestMapping(value = "/api/admin/api-keys", produces = MediaType.APPLICATION_JSON_VALUE)
+@PreAuthorize("hasRole('ADMIN')")
+public class ApiKeyController {
+
+	private final ApiKeyService apiKeyService;
+
+	public ApiKeyController(ApiKeyService apiKeyService) {
+		this.apiKeyService = apiKeyService;
+	}
+
+	@PostMapping
+	public ResponseEntity<?> create(@RequestBody ApiKeyRequest request) {
+		try {
+			NewApiKey created = apiKeyService.create(request.getName(), request.getRoles());
+			return ResponseEntity.status(HttpStatus.CREATED).body(created);
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.badRequest().build();
+		} catch (IllegalStateException e) {
+			// no app.api-keys.pepper configured
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+		}
+	}
+
+	@GetMapping
+	public List<ApiKey> list() {
+		return apiKeyService.findAll();
+	}
+
+	@DeleteMapping("/{id}")
+	public ResponseEntity<Void> revoke(@PathVariable Long id) {
+		return apiKeyService.revoke(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+	}
+
+	static class ApiKeyRequest {
+		private String name;
+		private Set<UserRoleName> roles;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public Set<UserRoleName> getRoles() {
+			return roles;
+		}
+
+		public void setRoles(Set<UserRoleName> roles) {
+			this.roles = roles;
+		}
+	}
+}
@@ -2,7 +2,9 @@ package com.bfwg.rest;
 
 import java.io.IOException;
 import java.security.Principal;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
@@ -10,6 +12,8 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mobile.device.Device;
@@ -18,7 +22,9 @@ import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -28,6 +34,7 @@ import com.bfwg.common.DeviceProvider;
 import com.bfwg.model.User;
 import com.bfwg.model.UserTokenState;
 import com.bfwg.security.TokenHelper;
+import com.bfwg.security.auth.ApiKeyAuthentication;
 import com.bfwg.security.auth.JwtAuthenticationRequest;
 import com.bfwg.service.UserService;
 
@@ -69,7 +76,7 @@ public class AuthenticationController {
 
 		// token creation
 		User user = (User) authentication.getPrincipal();
-		String jws = tokenHelper.generateToken(user.getUsername(), device);
+		String jws = tokenHelper.generateToken(user.getUsername(), user.getAuthorities(), device);
 		int expiresIn = tokenHelper.getExpiredIn(device);
 		// Return the token
 		return ResponseEntity.ok(new UserTokenState(jws, expiresIn));
@@ -81,6 +88,15 @@ public class AuthenticationController {
 			HttpServletResponse response,
 			Principal principal) {
 
+		if (principal instanceof ApiKeyAuthentication) {
+			// a key is sent like a token but is no JWT, it is used as is until revoked
+			Map<String, Object> error = new LinkedHashMap<>();
+			error.put("status", HttpStatus.BAD_REQUEST.value());
+			error.put("error", "bad_request");
+			error.put("message", "API keys cannot be refreshed");
+			return ResponseEntity.badRequest().body(error);
+		}
+
 		String authToken = tokenHelper.getToken(request);
 
 		Device device = deviceProvider.getCurrentDevice(request);
@@ -88,7 +104,10 @@ public class AuthenticationController {
 		if (authToken != null && principal != null) {
 
 			// TODO check user password last update
-			String refreshedToken = tokenHelper.refreshToken(authToken, device);
+			// roles as loaded for this request, not as copied from the old token
+			Collection<? extends GrantedAuthority> authorities = principal instanceof Authentication
+					? ((Authentication) principal).getAuthorities() : null;
+			String refreshedToken = tokenHelper.refreshToken(authToken, authorities, device);
 			int expiresIn = tokenHelper.getExpiredIn(device);
 
 			return ResponseEntity.ok(new UserTokenState(refreshedToken, expiresIn));
@@ -107,6 +126,13 @@ public class AuthenticationController {
 		return ResponseEntity.accepted().body(result);
 	}
 
+	@ExceptionHandler(ConcurrencyFailureException.class)
+	public ResponseEntity<?> passwordChangedConcurrently(ConcurrencyFailureException e) {
+		Map<String, String> result = new HashMap<>();
+		result.put("result", "conflict");
+		return ResponseEntity.status(HttpStatus.CONFLICT).body(result);
+	}
+
 	static class PasswordChanger {
 		public String oldPassword;
 		public String newPassword;
@@ -0,0 +1,259 @@
+package com.bfwg.rest;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.convert.ConversionException;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.PathContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.task.DelegatingSecurityContextAsyncTaskExecutor;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+/*
+ * Runs several UserController reads for one request, so a client pays the token
+ * verification and user lookup once instead of per call. The routes are the GET
+ * mappings the handler mapping registered for UserController, so they follow the
+ * controller as it changes. Sub-requests go through the controller bean and its
+ * @PreAuthorize checks, concurrently and with the caller's security context; the
+ * responses come back in request order.
+ */
+@RestController
+public class BatchController {
+
+	protected final Log LOGGER = LogFactory.getLog(getClass());
+
+	private static final DefaultParameterNameDiscoverer PARAMETER_NAMES = new DefaultParameterNameDiscoverer();
+
+	private final List<Route> routes = new ArrayList<>();
+
+	private final ConversionService conversionService;
+
+	private final AsyncTaskExecutor executor;
+
+	private final int maxRequests;
+
+	private final long timeoutMillis;
+
+	public BatchController(
+			@Qualifier("requestMappingHandlerMapping") RequestMappingHandlerMapping handlerMapping,
+			@Qualifier("mvcConversionService") ConversionService conversionService,
+			@Qualifier("batchExecutor") ThreadPoolTaskExecutor batchExecutor,
+			@Value("${app.batch.max-requests:10}") int maxRequests,
+			@Value("${app.batch.timeout:10s}") Duration timeout) {
+		this.conversionService = conversionService;
+		this.executor = new DelegatingSecurityContextAsyncTaskExecutor(batchExecutor);
+		this.maxRequests = maxRequests;
+		this.timeoutMillis = timeout.toMillis();
+		for (Map.Entry<RequestMappingInfo, HandlerMethod> mapping : handlerMapping.getHandlerMethods().entrySet()) {
+			RequestMappingInfo info = mapping.getKey();
+			HandlerMethod handler = mapping.getValue();
+			Set<RequestMethod> methods = info.getMethodsCondition().getMethods();
+			if (UserController.class.isAssignableFrom(handler.getBeanType())
+					&& (methods.isEmpty() || methods.contains(RequestMethod.GET)) && isSupported(handler)) {
+				for (String pattern : info.getPatternValues()) {
+					routes.add(new Route(PathPatternParser.defaultInstance.parse(pattern),
+							handler.createWithResolvedBean()));
+				}
+			}
+		}
+		// more specific patterns first, like the handler mapping orders them
+		routes.sort((a, b) -> PathPattern.SPECIFICITY_COMPARATOR.compare(a.pattern, b.pattern));
+	}
+
+	// only path variables and the principal can be bound without an HTTP request
+	private boolean isSupported(HandlerMethod handler) {
+		for (MethodParameter parameter : handler.getMethodParameters()) {
+			if (!parameter.hasParameterAnnotation(PathVariable.class)
+					&& !Principal.class.isAssignableFrom(parameter.getParameterType())) {
+				LOGGER.warn("Not batching " + handler.getShortLogMessage() + ", it takes " + parameter.getParameterType());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@PostMapping(value = "/api/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<?> batch(@RequestBody List<SubRequest> requests, Principal principal) {
+		if (requests == null || requests.isEmpty() || requests.size() > maxRequests) {
+			Map<String, Object> error = new LinkedHashMap<>();
+			error.put("error", "between 1 and " + maxRequests + " requests per batch");
+			return ResponseEntity.badRequest().body(error);
+		}
+		List<Future<Map<String, Object>>> futures = new ArrayList<>(requests.size());
+		for (SubRequest request : requests) {
+			try {
+				// a single entry as well, so the timeout applies to it; a plain FutureTask,
+				// whose cancel interrupts the pool thread running it
+				futures.add(executor.submit(() -> execute(request, principal)));
+			} catch (RejectedExecutionException e) {
+				futures.add(CompletableFuture.completedFuture(
+						response(request, HttpStatus.SERVICE_UNAVAILABLE, null)));
+			}
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		List<Map<String, Object>> responses = new ArrayList<>(futures.size());
+		for (int i = 0; i < futures.size(); i++) {
+			responses.add(await(futures.get(i), requests.get(i), deadline));
+		}
+		return ResponseEntity.ok(responses);
+	}
+
+	private Map<String, Object> await(Future<Map<String, Object>> future, SubRequest request,
+			long deadline) {
+		try {
+			return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			return response(request, HttpStatus.GATEWAY_TIMEOUT, null);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return response(request, HttpStatus.SERVICE_UNAVAILABLE, null);
+		} catch (ExecutionException e) {
+			return response(request, HttpStatus.INTERNAL_SERVER_ERROR, null);
+		}
+	}
+
+	private Map<String, Object> execute(SubRequest request, Principal principal) {
+		if (request.getPath() == null || !"GET".equalsIgnoreCase(request.getMethod())) {
+			return response(request, HttpStatus.METHOD_NOT_ALLOWED, null);
+		}
+		PathContainer path = PathContainer.parsePath(request.getPath());
+		for (Route route : routes) {
+			PathPattern.PathMatchInfo match = route.pattern.matchAndExtract(path);
+			if (match == null) {
+				continue;
+			}
+			try {
+				return response(request, HttpStatus.OK, invoke(route.handler, match.getUriVariables(), principal));
+			} catch (ConversionException e) {
+				return response(request, HttpStatus.BAD_REQUEST, null);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof AccessDeniedException) {
+					return response(request, HttpStatus.FORBIDDEN, null);
+				}
+				LOGGER.warn("Batch request " + request.getPath() + " failed", e.getCause());
+				return response(request, HttpStatus.INTERNAL_SERVER_ERROR, null);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				LOGGER.warn("Batch request " + request.getPath() + " failed", e);
+				return response(request, HttpStatus.INTERNAL_SERVER_ERROR, null);
+			}
+		}
+		return response(request, HttpStatus.NOT_FOUND, null);
+	}
+
+	private Object invoke(HandlerMethod handler, Map<String, String> variables, Principal principal)
+			throws ReflectiveOperationException {
+		MethodParameter[] parameters = handler.getMethodParameters();
+		Object[] arguments = new Object[parameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			MethodParameter parameter = parameters[i];
+			if (parameter.hasParameterAnnotation(PathVariable.class)) {
+				arguments[i] = conversionService.convert(variables.get(variableName(parameter)),
+						parameter.getParameterType());
+			} else {
+				arguments[i] = principal;
+			}
+		}
+		// the resolved bean is the security proxy, so @PreAuthorize applies
+		Method method = handler.getMethod();
+		return method.invoke(handler.getBean(), arguments);
+	}
+
+	private static String variableName(MethodParameter parameter) {
+		PathVariable annotation = parameter.getParameterAnnotation(PathVariable.class);
+		if (annotation != null && !annotation.name().isEmpty()) {
+			return annotation.name();
+		}
+		if (annotation != null && !annotation.value().isEmpty()) {
+			return annotation.value();
+		}
+		parameter.initParameterNameDiscovery(PARAMETER_NAMES);
+		return parameter.getParameterName();
+	}
+
+	private static Map<String, Object> response(SubRequest request, HttpStatus status, Object body) {
+		Map<String, Object> response = new LinkedHashMap<>();
+		if (request.getId() != null) {
+			response.put("id", request.getId());
+		}
+		response.put("path", request.getPath());
+		response.put("status", status.value());
+		response.put("body", body);
+		return response;
+	}
+
+	private static final class Route {
+		final PathPattern pattern;
+		final HandlerMethod handler;
+
+		Route(PathPattern pattern, HandlerMethod handler) {
+			this.pattern = pattern;
+			this.handler = handler;
+		}
+	}
+
+	static class SubRequest {
+		private String id;
+		private String method = "GET";
+		private String path;
+
+		public String getId() {
+			return id;
+		}
+
+		public void setId(String id) {
+			this.id = id;
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public void setMethod(String method) {
+			this.method = method;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.bfwg.rest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.bfwg.common.PreencodedJsonResponse;
+import com.bfwg.jfr.FlightRecordings;
+
+/*
+ * Starts, stops and downloads an on-demand flight recording with the
+ * application events enabled.
+ */
+@RestController
+@RequestMapping(value = "/api/admin/jfr")
+@PreAuthorize("hasRole('ADMIN')")
+public class FlightRecorderController {
+
+	static final String JFR_CONTENT_TYPE = "application/octet-stream";
+
+	private static final PreencodedJsonResponse NO_RECORDING = PreencodedJsonResponse.of(
+			HttpServletResponse.SC_NOT_FOUND, "not_found", "No recording to dump, start one first");
+
+	private final FlightRecordings recordings;
+
+	public FlightRecorderController(FlightRecordings recordings) {
+		this.recordings = recordings;
+	}
+
+	@PostMapping(value = "/start")
+	public ResponseEntity<Map<String, String>> start(
+			@RequestParam(value = "settings", defaultValue = "default") String settings,
+			@RequestParam(value = "maxAgeSeconds", defaultValue = "600") long maxAgeSeconds)
+			throws IOException {
+		boolean started;
+		try {
+			started = recordings.start(settings, Duration.ofSeconds(maxAgeSeconds));
+		} catch (ParseException | IOException e) {
+			return state(HttpStatus.BAD_REQUEST);
+		}
+		return state(started ? HttpStatus.OK : HttpStatus.CONFLICT);
+	}
+
+	@PostMapping(value = "/stop")
+	public ResponseEntity<Map<String, String>> stop() {
+		return state(recordings.stop() ? HttpStatus.OK : HttpStatus.CONFLICT);
+	}
+
+	@GetMapping(value = "/status")
+	public ResponseEntity<Map<String, String>> status() {
+		return state(HttpStatus.OK);
+	}
+
+	@GetMapping(value = "/dump")
+	public void dump(HttpServletResponse response) throws IOException {
+		Path file = Files.createTempFile("recording-", ".jfr");
+		try {
+			if (!recordings.dump(file)) {
+				NO_RECORDING.writeTo(response);
+				return;
+			}
+			response.setContentType(JFR_CONTENT_TYPE);
+			response.setHeader("Content-Disposition", "attachment; filename=\"recording.jfr\"");
+			response.setContentLengthLong(Files.size(file));
+			Files.copy(file, response.getOutputStream());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private ResponseEntity<Map<String, String>> state(HttpStatus status) {
+		return ResponseEntity.status(status).body(Collections.singletonMap("state", recordings.state()));
+	}
+}
@@ -0,0 +1,53 @@
+package com.bfwg.rest;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.bfwg.security.AsymmetricJwtKeys;
+
+/*
+ * Publishes the token verification keys so gateways and other services can verify
+ * tokens locally. The document only changes with the keys, so it is served with a
+ * long max-age and a strong ETag; a key generated per start changes with every
+ * restart, so it only gets a short one.
+ */
+@RestController
+public class JwksController {
+
+	static final MediaType JWK_SET = MediaType.valueOf("application/jwk-set+json");
+
+	private final byte[] jwks;
+
+	private final String etag;
+
+	private final CacheControl cacheControl;
+
+	public JwksController(AsymmetricJwtKeys keys, @Value("${jwt.jwks.max-age:1d}") Duration maxAge,
+			@Value("${jwt.jwks.ephemeral-max-age:1m}") Duration ephemeralMaxAge) throws NoSuchAlgorithmException {
+		this.jwks = keys.getJwks();
+		this.etag = "\"" + Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(MessageDigest.getInstance("SHA-256").digest(jwks)) + "\"";
+		this.cacheControl = CacheControl.maxAge(keys.isEphemeral() ? ephemeralMaxAge : maxAge).cachePublic();
+	}
+
+	@GetMapping(value = "/.well-known/jwks.json")
+	public ResponseEntity<byte[]> jwks(
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		if (etag.equals(ifNoneMatch)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+		}
+		return ResponseEntity.ok().eTag(etag).cacheControl(cacheControl).contentType(JWK_SET).body(jwks);
+	}
+}
@@ -0,0 +1,98 @@
+package com.bfwg.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.bfwg.model.UserImportRecord;
+import com.bfwg.service.UserProvisioningService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@RestController
+@RequestMapping(value = "/api/admin")
+public class UserAdminController {
+
+	static final String TEXT_CSV_VALUE = "text/csv";
+
+	static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+	private final UserProvisioningService provisioningService;
+
+	private final ObjectMapper objectMapper;
+
+	public UserAdminController(UserProvisioningService provisioningService, ObjectMapper objectMapper) {
+		this.provisioningService = provisioningService;
+		this.objectMapper = objectMapper;
+	}
+
+	/*
+	 * Streams the body into the import and answers with one JSON line per committed
+	 * chunk, so callers can follow progress of long imports. A body that cannot be
+	 * read from its start is answered with a 400 before anything is streamed.
+	 */
+	@PostMapping(value = "/users/import", consumes = { MediaType.APPLICATION_JSON_VALUE, TEXT_CSV_VALUE })
+	@PreAuthorize("hasRole('ADMIN')")
+	public void importUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Iterator<UserImportRecord> records;
+		try {
+			records = MediaType.parseMediaType(request.getContentType())
+					.isCompatibleWith(MediaType.valueOf(TEXT_CSV_VALUE))
+							? UserImportReader.csv(request.getInputStream())
+							: UserImportReader.json(request.getInputStream(), objectMapper);
+		} catch (IllegalArgumentException | JsonProcessingException e) {
+			Map<String, Object> error = new LinkedHashMap<>();
+			error.put("status", HttpServletResponse.SC_BAD_REQUEST);
+			error.put("error", "bad_request");
+			error.put("message", e.getMessage());
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+			response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			objectMapper.writeValue(response.getOutputStream(), error);
+			return;
+		}
+
+		response.setContentType(APPLICATION_NDJSON_VALUE);
+		OutputStream out = response.getOutputStream();
+		long started = System.nanoTime();
+		long[] imported = new long[1];
+		Map<String, Object> result = new LinkedHashMap<>();
+		try {
+			provisioningService.importUsers(records, importedSoFar -> {
+				imported[0] = importedSoFar;
+				Map<String, Object> progress = new LinkedHashMap<>();
+				progress.put("imported", importedSoFar);
+				writeLine(out, progress);
+			});
+			result.put("imported", imported[0]);
+			result.put("done", true);
+		} catch (RuntimeException e) {
+			result.put("imported", imported[0]);
+			result.put("done", false);
+			result.put("error", e.getMessage());
+		}
+		result.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+		writeLine(out, result);
+	}
+
+	private void writeLine(OutputStream out, Map<String, Object> line) {
+		try {
+			out.write(objectMapper.writeValueAsBytes(line));
+			out.write('\n');
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not report import progress", e);
+		}
+	}
+}
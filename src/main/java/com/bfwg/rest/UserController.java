@@ -10,7 +10,10 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.bfwg.model.User;
+import com.bfwg.model.ClaimsSummary;
+import com.bfwg.model.UserSummary;
+import com.bfwg.security.auth.ApiKeyAuthentication;
+import com.bfwg.security.auth.ClaimsAuthentication;
 import com.bfwg.service.UserService;
 
 /**
@@ -29,24 +32,36 @@ public class UserController {
 
 	@GetMapping("/user/{userId}")
 	@PreAuthorize("hasRole('ADMIN')")
-	public User loadById(@PathVariable Long userId) {
-		return this.userService.findById(userId);
+	public UserSummary loadById(@PathVariable Long userId) {
+		return this.userService.findSummaryById(userId);
 	}
 
 	@GetMapping("/user/all")
 	@PreAuthorize("hasRole('ADMIN')")
-	public List<User> loadAll() {
-		return this.userService.findAll();
+	public List<UserSummary> loadAll() {
+		return this.userService.findAllSummaries();
 	}
 
 	/*
 	 * We are not using userService.findByUsername here(we could), so it is good
 	 * that we are making sure that the user has role "ROLE_USER" to access this
 	 * endpoint.
+	 *
+	 * While the user store is unavailable the token filter authenticates this path from the
+	 * token claims alone, and those claims are all it answers with. A service account API
+	 * key is no user either, it is answered with its name and roles.
 	 */
 	@GetMapping("/whoami")
 	@PreAuthorize("hasRole('USER')")
-	public User user(Principal user) {
-		return this.userService.findByUsername(user.getName());
+	public Object user(Principal user) {
+		if (user instanceof ClaimsAuthentication) {
+			ClaimsAuthentication claims = (ClaimsAuthentication) user;
+			return new ClaimsSummary(claims.getName(), claims.getAuthorities(), claims.getIssuedAt());
+		}
+		if (user instanceof ApiKeyAuthentication) {
+			ApiKeyAuthentication apiKey = (ApiKeyAuthentication) user;
+			return new ClaimsSummary(apiKey.getName(), apiKey.getAuthorities(), null);
+		}
+		return this.userService.findSummaryByUsername(user.getName());
 	}
 }
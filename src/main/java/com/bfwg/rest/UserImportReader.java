@@ -0,0 +1,158 @@
+package com.bfwg.rest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.bfwg.model.UserImportRecord;
+import com.bfwg.model.UserRoleName;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Streams import records out of a request body without buffering the whole
+ * document, so the import can start while the upload is still arriving.
+ */
+abstract class UserImportReader implements Iterator<UserImportRecord> {
+
+	private UserImportRecord next;
+
+	private boolean done;
+
+	/**
+	 * Reads a JSON array of {@link UserImportRecord} objects.
+	 */
+	static UserImportReader json(InputStream in, ObjectMapper objectMapper) throws IOException {
+		JsonParser parser = objectMapper.getFactory().createParser(in);
+		if (parser.nextToken() != JsonToken.START_ARRAY) {
+			throw new IllegalArgumentException("Expected a JSON array of users.");
+		}
+		return new UserImportReader() {
+			@Override
+			UserImportRecord read() throws IOException {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					return null;
+				}
+				return objectMapper.readValue(parser, UserImportRecord.class);
+			}
+		};
+	}
+
+	/**
+	 * Reads CSV with a header line naming the {@link UserImportRecord} properties,
+	 * e.g. {@code username,password,firstName,lastName,email,phoneNumber,enabled,roles}.
+	 * Roles are separated by {@code |}; values may be double quoted.
+	 */
+	static UserImportReader csv(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		String header = reader.readLine();
+		if (header == null) {
+			throw new IllegalArgumentException("Missing CSV header line.");
+		}
+		List<String> columns = splitCsvLine(header);
+		return new UserImportReader() {
+			@Override
+			UserImportRecord read() throws IOException {
+				String line;
+				do {
+					line = reader.readLine();
+					if (line == null) {
+						return null;
+					}
+				} while (line.trim().isEmpty());
+				List<String> values = splitCsvLine(line);
+				Map<String, String> row = new HashMap<>();
+				for (int i = 0; i < columns.size() && i < values.size(); i++) {
+					row.put(columns.get(i).trim(), values.get(i));
+				}
+				return toRecord(row);
+			}
+		};
+	}
+
+	abstract UserImportRecord read() throws IOException;
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !done) {
+			try {
+				next = read();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			done = next == null;
+		}
+		return next != null;
+	}
+
+	@Override
+	public UserImportRecord next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		UserImportRecord record = next;
+		next = null;
+		return record;
+	}
+
+	private static UserImportRecord toRecord(Map<String, String> row) {
+		UserImportRecord record = new UserImportRecord();
+		record.setUsername(row.get("username"));
+		record.setPassword(row.get("password"));
+		record.setFirstName(row.get("firstName"));
+		record.setLastName(row.get("lastName"));
+		record.setEmail(row.get("email"));
+		record.setPhoneNumber(row.get("phoneNumber"));
+		String enabled = row.get("enabled");
+		if (enabled != null && !enabled.isEmpty()) {
+			record.setEnabled(Boolean.parseBoolean(enabled));
+		}
+		String roles = row.get("roles");
+		if (roles != null && !roles.isEmpty()) {
+			List<UserRoleName> names = new ArrayList<>();
+			for (String role : roles.split("\\|")) {
+				names.add(UserRoleName.valueOf(role.trim()));
+			}
+			record.setRoles(names);
+		}
+		return record;
+	}
+
+	private static List<String> splitCsvLine(String line) {
+		List<String> values = new ArrayList<>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					value.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					value.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		values.add(value.toString());
+		return values;
+	}
+}
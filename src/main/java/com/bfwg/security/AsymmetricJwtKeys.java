@@ -0,0 +1,288 @@
+package com.bfwg.security;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Key pair for ES256 or EdDSA (Ed25519) signed tokens, selected by jwt.algorithm.
+ * The public key is published as a JWK whose kid is its RFC 7638 thumbprint. With
+ * the default HS512 this is inactive and publishes no keys.
+ *
+ * jwt.asymmetric.private-key and public-key hold base64 PKCS#8 and X.509 DER of the
+ * active pair, which signs; without them an ephemeral pair is generated, which only
+ * suits a single node. jwt.asymmetric.published-keys lists further base64 X.509 public
+ * keys, comma separated, that verify and are published next to the active one: the
+ * next pair ahead of a rotation and the previous one until its tokens have expired.
+ */
+@Component
+public class AsymmetricJwtKeys {
+
+    private static final Log LOGGER = LogFactory.getLog(AsymmetricJwtKeys.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    enum Algorithm {
+        HS512(null, null),
+        // P1363 is the raw r||s encoding JWS expects, not DER
+        ES256("EC", "SHA256withECDSAinP1363Format"),
+        EdDSA("Ed25519", "Ed25519");
+
+        final String keyAlgorithm;
+        final String signatureAlgorithm;
+
+        Algorithm(String keyAlgorithm, String signatureAlgorithm) {
+            this.keyAlgorithm = keyAlgorithm;
+            this.signatureAlgorithm = signatureAlgorithm;
+        }
+    }
+
+    private final Algorithm algorithm;
+
+    private final PrivateKey privateKey;
+
+    private final String kid;
+
+    // the active public key and the published ones by kid
+    private final Map<String, PublicKey> verificationKeys;
+
+    private final boolean ephemeral;
+
+    private final byte[] encodedHeader;
+
+    private final byte[] jwks;
+
+    private final ThreadLocal<Signature> signatures;
+
+    public AsymmetricJwtKeys(String algorithm, String privateKey, String publicKey) throws GeneralSecurityException {
+        this(algorithm, privateKey, publicKey, Collections.emptyList());
+    }
+
+    @Autowired
+    public AsymmetricJwtKeys(@Value("${jwt.algorithm:HS512}") String algorithm,
+                             @Value("${jwt.asymmetric.private-key:}") String privateKey,
+                             @Value("${jwt.asymmetric.public-key:}") String publicKey,
+                             @Value("${jwt.asymmetric.published-keys:}") List<String> publishedKeys)
+            throws GeneralSecurityException {
+        this.algorithm = Algorithm.valueOf(algorithm);
+        if (this.algorithm == Algorithm.HS512) {
+            this.privateKey = null;
+            this.kid = null;
+            this.verificationKeys = Collections.emptyMap();
+            this.ephemeral = false;
+            this.encodedHeader = null;
+            this.jwks = "{\"keys\":[]}".getBytes(StandardCharsets.US_ASCII);
+            this.signatures = null;
+            return;
+        }
+        this.ephemeral = privateKey.isEmpty();
+        KeyPair pair = ephemeral ? generate(this.algorithm) : decode(this.algorithm, privateKey, publicKey);
+        this.privateKey = pair.getPrivate();
+        Map<String, PublicKey> keys = new HashMap<>();
+        List<Map<String, String>> jwkList = new ArrayList<>();
+        this.kid = publish(this.algorithm, pair.getPublic(), keys, jwkList);
+        KeyFactory factory = KeyFactory.getInstance(this.algorithm.keyAlgorithm);
+        for (String published : publishedKeys) {
+            if (!published.trim().isEmpty()) {
+                publish(this.algorithm, factory.generatePublic(
+                        new X509EncodedKeySpec(Base64.getMimeDecoder().decode(published.trim()))), keys, jwkList);
+            }
+        }
+        this.verificationKeys = keys;
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("alg", this.algorithm.name());
+        header.put("kid", kid);
+        this.encodedHeader = BASE64_URL.encode(json(header));
+        this.jwks = json(Collections.singletonMap("keys", jwkList));
+        String signatureAlgorithm = this.algorithm.signatureAlgorithm;
+        this.signatures = ThreadLocal.withInitial(() -> {
+            try {
+                return Signature.getInstance(signatureAlgorithm);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        LOGGER.info("Signing tokens with " + this.algorithm + ", kid " + kid + ", verifying kids " + keys.keySet());
+    }
+
+    // the active key first, a published key equal to it is listed once
+    private static String publish(Algorithm algorithm, PublicKey publicKey, Map<String, PublicKey> keys,
+                                  List<Map<String, String>> jwkList) throws GeneralSecurityException {
+        Map<String, String> jwk = jwk(algorithm, publicKey);
+        String kid = thumbprint(jwk);
+        if (keys.putIfAbsent(kid, publicKey) == null) {
+            jwk.put("kid", kid);
+            jwk.put("use", "sig");
+            jwk.put("alg", algorithm.name());
+            jwkList.add(jwk);
+        }
+        return kid;
+    }
+
+    public boolean isActive() {
+        return algorithm != Algorithm.HS512;
+    }
+
+    /**
+     * JWS algorithm name written to and expected in the token header.
+     */
+    public String getAlgorithm() {
+        return algorithm.name();
+    }
+
+    /**
+     * Kid of the active key, which signs.
+     */
+    public String getKid() {
+        return kid;
+    }
+
+    /**
+     * Whether tokens with this kid can be verified, by the active or a published key.
+     */
+    public boolean hasKey(String kid) {
+        return kid != null && verificationKeys.containsKey(kid);
+    }
+
+    /**
+     * Whether the active pair was generated for this process, and changes with every start.
+     */
+    public boolean isEphemeral() {
+        return ephemeral;
+    }
+
+    /**
+     * The JWK set document, {"keys":[]} in HS512 mode.
+     */
+    public byte[] getJwks() {
+        return jwks;
+    }
+
+    /**
+     * Compact JWS of the claims, which must serialise to JSON as they are.
+     */
+    public String sign(Map<String, Object> claims) {
+        byte[] payload = BASE64_URL.encode(json(claims));
+        byte[] signingInput = new byte[encodedHeader.length + 1 + payload.length];
+        System.arraycopy(encodedHeader, 0, signingInput, 0, encodedHeader.length);
+        signingInput[encodedHeader.length] = '.';
+        System.arraycopy(payload, 0, signingInput, encodedHeader.length + 1, payload.length);
+        try {
+            Signature signature = signatures.get();
+            signature.initSign(privateKey);
+            signature.update(signingInput);
+            return new String(signingInput, StandardCharsets.US_ASCII) + '.'
+                    + BASE64_URL.encodeToString(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks the signature over the first {@code signingInputLength} chars of the
+     * token; false for a kid this instance does not hold.
+     */
+    boolean verify(String kid, String token, int signingInputLength, byte[] signatureBytes) {
+        PublicKey publicKey = kid != null ? verificationKeys.get(kid) : null;
+        if (publicKey == null) {
+            return false;
+        }
+        try {
+            Signature signature = signatures.get();
+            signature.initVerify(publicKey);
+            signature.update(token.getBytes(StandardCharsets.US_ASCII), 0, signingInputLength);
+            return signature.verify(signatureBytes);
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    private static KeyPair generate(Algorithm algorithm) throws GeneralSecurityException {
+        LOGGER.warn("No jwt.asymmetric keys configured, generated an ephemeral " + algorithm
+                + " key pair; tokens will not verify on other nodes or after a restart");
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm.keyAlgorithm);
+        if (algorithm == Algorithm.ES256) {
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+        }
+        return generator.generateKeyPair();
+    }
+
+    private static KeyPair decode(Algorithm algorithm, String privateKey, String publicKey)
+            throws GeneralSecurityException {
+        KeyFactory factory = KeyFactory.getInstance(algorithm.keyAlgorithm);
+        return new KeyPair(
+                factory.generatePublic(new X509EncodedKeySpec(Base64.getMimeDecoder().decode(publicKey))),
+                factory.generatePrivate(new PKCS8EncodedKeySpec(Base64.getMimeDecoder().decode(privateKey))));
+    }
+
+    // required members only, in the lexicographic order RFC 7638 hashes them in
+    private static Map<String, String> jwk(Algorithm algorithm, PublicKey publicKey) {
+        Map<String, String> jwk = new LinkedHashMap<>();
+        if (algorithm == Algorithm.ES256) {
+            ECPublicKey ec = (ECPublicKey) publicKey;
+            jwk.put("crv", "P-256");
+            jwk.put("kty", "EC");
+            jwk.put("x", BASE64_URL.encodeToString(unsigned(ec.getW().getAffineX(), 32)));
+            jwk.put("y", BASE64_URL.encodeToString(unsigned(ec.getW().getAffineY(), 32)));
+        } else {
+            // X.509 SubjectPublicKeyInfo of Ed25519 is a fixed 12 byte prefix and the raw key
+            byte[] encoded = publicKey.getEncoded();
+            jwk.put("crv", "Ed25519");
+            jwk.put("kty", "OKP");
+            jwk.put("x", BASE64_URL.encodeToString(Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length)));
+        }
+        return jwk;
+    }
+
+    private static String thumbprint(Map<String, String> jwk) throws GeneralSecurityException {
+        return BASE64_URL.encodeToString(MessageDigest.getInstance("SHA-256").digest(json(jwk)));
+    }
+
+    private static byte[] unsigned(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length == length) {
+            return bytes;
+        }
+        byte[] padded = new byte[length];
+        int copy = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copy, padded, length - copy, copy);
+        return padded;
+    }
+
+    private static byte[] json(Object value) {
+        try {
+            return OBJECT_MAPPER.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
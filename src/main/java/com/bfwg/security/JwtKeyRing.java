@@ -0,0 +1,196 @@
+package com.bfwg.security;
+
+import io.jsonwebtoken.impl.TextCodec;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HMAC keys by key id, loaded from a properties file named by jwt.keyring.file:
+ *
+ * <pre>
+ * active=2026-10
+ * key.2026-10=base64 secret
+ * key.2026-07=base64 secret
+ * legacy=2026-07
+ * </pre>
+ *
+ * New tokens are signed with the active key and carry its kid; every listed key
+ * verifies. Tokens without a kid, issued before the ring, only verify with the key
+ * named by the optional {@code legacy} entry, never with jwt.secret; dropping the
+ * entry retires them. The file is polled and swapped in as a whole when it changes,
+ * a file that does not parse keeps the previous keys. Without a file the ring is
+ * empty and TokenHelper uses jwt.secret.
+ */
+@Component
+public class JwtKeyRing {
+
+    private static final Log LOGGER = LogFactory.getLog(JwtKeyRing.class);
+
+    static final String ACTIVE = "active";
+
+    static final String KEY_PREFIX = "key.";
+
+    static final String LEGACY = "legacy";
+
+    private final Path file;
+
+    private final Duration reloadInterval;
+
+    private volatile KeySet keys = KeySet.EMPTY;
+
+    private byte[] loadedContent;
+
+    private ScheduledExecutorService reloader;
+
+    public JwtKeyRing(@Value("${jwt.keyring.file:}") String file,
+                      @Value("${jwt.keyring.reload-interval:10s}") Duration reloadInterval) {
+        this.file = file.isEmpty() ? null : Paths.get(file);
+        this.reloadInterval = reloadInterval;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (file == null) {
+            return;
+        }
+        // a broken file at startup is fatal, later it only keeps the previous keys
+        byte[] content = Files.readAllBytes(file);
+        keys = parse(content);
+        loadedContent = content;
+        reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwt-keyring-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = reloadInterval.toMillis();
+        reloader.scheduleWithFixedDelay(this::reloadIfChanged, interval, interval, TimeUnit.MILLISECONDS);
+        LOGGER.info("Loaded " + keys.byKid.size() + " JWT keys from " + file + ", active key " + keys.activeKid);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+
+    synchronized void reloadIfChanged() {
+        try {
+            byte[] content = Files.readAllBytes(file);
+            if (Arrays.equals(content, loadedContent)) {
+                return;
+            }
+            keys = parse(content);
+            loadedContent = content;
+            LOGGER.info("Reloaded " + keys.byKid.size() + " JWT keys from " + file + ", active key " + keys.activeKid);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Keeping the previous JWT keys, could not load " + file + ": " + e.getMessage());
+        }
+    }
+
+    public boolean isConfigured() {
+        return keys.active != null;
+    }
+
+    /**
+     * The key new tokens are signed with, null if the ring is not configured.
+     */
+    public ActiveKey activeKey() {
+        return keys.active;
+    }
+
+    /**
+     * @return the verification key for {@code kid}, or null if it is not in the ring
+     */
+    public SecretKeySpec verificationKey(String kid) {
+        return keys.byKid.get(kid);
+    }
+
+    /**
+     * @return the key verifying tokens without a kid, null when they are not accepted
+     */
+    public SecretKeySpec legacyKey() {
+        return keys.legacy;
+    }
+
+    static KeySet parse(byte[] content) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(content));
+        Map<String, SecretKeySpec> byKid = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(KEY_PREFIX)) {
+                String kid = name.substring(KEY_PREFIX.length());
+                byte[] secret = TextCodec.BASE64.decode(properties.getProperty(name).trim());
+                if (kid.isEmpty() || secret.length == 0) {
+                    throw new IllegalArgumentException("empty key id or secret in " + name);
+                }
+                byKid.put(kid, new SecretKeySpec(secret, "HmacSHA512"));
+            }
+        }
+        String activeKid = properties.getProperty(ACTIVE, "").trim();
+        SecretKeySpec active = byKid.get(activeKid);
+        if (active == null) {
+            throw new IllegalArgumentException("active key '" + activeKid + "' is not listed");
+        }
+        String legacyKid = properties.getProperty(LEGACY, "").trim();
+        SecretKeySpec legacy = legacyKid.isEmpty() ? null : byKid.get(legacyKid);
+        if (!legacyKid.isEmpty() && legacy == null) {
+            throw new IllegalArgumentException("legacy key '" + legacyKid + "' is not listed");
+        }
+        return new KeySet(new ActiveKey(activeKid, active), byKid, legacy);
+    }
+
+    public static final class ActiveKey {
+        private final String kid;
+        private final SecretKeySpec key;
+
+        ActiveKey(String kid, SecretKeySpec key) {
+            this.kid = kid;
+            this.key = key;
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public SecretKeySpec getKey() {
+            return key;
+        }
+    }
+
+    static final class KeySet {
+        static final KeySet EMPTY = new KeySet(null, Collections.emptyMap(), null);
+
+        final ActiveKey active;
+        final String activeKid;
+        final Map<String, SecretKeySpec> byKid;
+        final SecretKeySpec legacy;
+
+        KeySet(ActiveKey active, Map<String, SecretKeySpec> byKid, SecretKeySpec legacy) {
+            this.active = active;
+            this.activeKid = active == null ? null : active.kid;
+            this.byKid = byKid;
+            this.legacy = legacy;
+        }
+    }
+}
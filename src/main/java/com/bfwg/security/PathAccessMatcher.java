@@ -0,0 +1,174 @@
+package com.bfwg.security;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides in one pass whether a request bypasses security, is open to anonymous callers,
+ * is permitted but may carry a token, or needs authentication.
+ *
+ * Replaces sequential AntPathRequestMatcher lists. Patterns are limited to the forms the
+ * configuration uses: an exact path, a {@code /prefix/**} (which also matches the prefix
+ * itself), {@code /*.ext} for the root directory and {@code /**}{@code /*.ext} anywhere.
+ * When several rules apply the strongest access wins, in the order of {@link Access}.
+ */
+public final class PathAccessMatcher {
+
+    /**
+     * Request attribute caching the decision, the chain asks several times per request.
+     */
+    static final String ACCESS_ATTRIBUTE = PathAccessMatcher.class.getName() + ".ACCESS";
+
+    public enum Access {
+        /** not passed through the security filter chain at all */
+        IGNORE,
+        /** permitted and never authenticated, so the token filter is skipped */
+        ANONYMOUS,
+        /** permitted, a token is still authenticated when present */
+        PERMIT,
+        AUTHENTICATE
+    }
+
+    private final Rules anyMethod = new Rules();
+
+    private final Map<HttpMethod, Rules> byMethod = new EnumMap<>(HttpMethod.class);
+
+    public PathAccessMatcher add(Access access, String... patterns) {
+        return add(null, access, patterns);
+    }
+
+    public PathAccessMatcher add(HttpMethod method, Access access, String... patterns) {
+        Rules rules = method == null ? anyMethod : byMethod.computeIfAbsent(method, m -> new Rules());
+        for (String pattern : patterns) {
+            rules.add(pattern, access);
+        }
+        return this;
+    }
+
+    public Access decide(HttpServletRequest request) {
+        // forwards and error dispatches change the path, only the original request is cached
+        boolean cacheable = request.getDispatcherType() == DispatcherType.REQUEST;
+        Object cached = cacheable ? request.getAttribute(ACCESS_ATTRIBUTE) : null;
+        if (cached instanceof Access) {
+            return (Access) cached;
+        }
+        Access access = decide(HttpMethod.resolve(request.getMethod()), requestPath(request));
+        if (cacheable) {
+            request.setAttribute(ACCESS_ATTRIBUTE, access);
+        }
+        return access;
+    }
+
+    public Access decide(HttpMethod method, String path) {
+        Access access = anyMethod.decide(path);
+        Rules rules = method != null ? byMethod.get(method) : null;
+        if (rules != null) {
+            access = strongest(access, rules.decide(path));
+        }
+        return access;
+    }
+
+    public RequestMatcher matching(Access access) {
+        return request -> decide(request) == access;
+    }
+
+    // the path AntPathRequestMatcher matches against
+    private static String requestPath(HttpServletRequest request) {
+        String url = request.getServletPath();
+        String pathInfo = request.getPathInfo();
+        if (pathInfo != null) {
+            url = StringUtils.hasLength(url) ? url + pathInfo : pathInfo;
+        }
+        return url;
+    }
+
+    private static Access strongest(Access a, Access b) {
+        return a.ordinal() <= b.ordinal() ? a : b;
+    }
+
+    private static final class Rules {
+
+        private final Map<String, Access> exact = new HashMap<>();
+
+        // file extensions in any directory and in the root directory only
+        private final Map<String, Access> extensions = new HashMap<>();
+        private final Map<String, Access> rootExtensions = new HashMap<>();
+
+        // one node per path segment, holding the access of a /prefix/** ending there
+        private final Node prefixes = new Node();
+
+        void add(String pattern, Access access) {
+            if (pattern.startsWith("/**/*.") && pattern.indexOf('*', 6) < 0) {
+                extensions.merge(pattern.substring(6), access, PathAccessMatcher::strongest);
+            } else if (pattern.startsWith("/*.") && pattern.indexOf('*', 3) < 0) {
+                rootExtensions.merge(pattern.substring(3), access, PathAccessMatcher::strongest);
+            } else if (pattern.endsWith("/**") && pattern.indexOf('*') == pattern.length() - 2) {
+                Node node = prefixes;
+                String prefix = pattern.substring(1, pattern.length() - 3);
+                for (String segment : prefix.isEmpty() ? new String[0] : prefix.split("/")) {
+                    node = node.children.computeIfAbsent(segment, s -> new Node());
+                }
+                node.access = node.access == null ? access : strongest(node.access, access);
+            } else if (pattern.startsWith("/") && pattern.indexOf('*') < 0) {
+                exact.merge(pattern, access, PathAccessMatcher::strongest);
+            } else {
+                throw new IllegalArgumentException("Unsupported pattern " + pattern);
+            }
+        }
+
+        Access decide(String path) {
+            Access access = Access.AUTHENTICATE;
+            Access match = exact.get(path);
+            if (match != null) {
+                access = match;
+            }
+            if (!extensions.isEmpty() || !rootExtensions.isEmpty()) {
+                // like AntPathMatcher, /**/*.ext also matches with trailing slashes but /*.ext does not
+                int end = path.length();
+                while (end > 1 && path.charAt(end - 1) == '/') {
+                    end--;
+                }
+                int lastSlash = path.lastIndexOf('/', end - 1);
+                int dot = path.lastIndexOf('.', end - 1);
+                if (dot > lastSlash) {
+                    String extension = path.substring(dot + 1, end);
+                    access = strongest(access, extensions.getOrDefault(extension, access));
+                    if (lastSlash == 0 && end == path.length()) {
+                        access = strongest(access, rootExtensions.getOrDefault(extension, access));
+                    }
+                }
+            }
+            Node node = prefixes;
+            int start = 1;
+            while (node != null && access != Access.IGNORE) {
+                if (node.access != null) {
+                    access = strongest(access, node.access);
+                }
+                if (start > path.length()) {
+                    break;
+                }
+                int end = path.indexOf('/', start);
+                if (end < 0) {
+                    end = path.length();
+                }
+                node = node.children.isEmpty() ? null : node.children.get(path.substring(start, end));
+                start = end + 1;
+            }
+            return access;
+        }
+    }
+
+    private static final class Node {
+
+        final Map<String, Node> children = new HashMap<>();
+
+        Access access;
+    }
+}
@@ -0,0 +1,115 @@
+package com.bfwg.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Answers CORS preflights itself, before security and token processing, with header values
+ * joined once at startup and a long max age so browsers cache them. Actual cross-origin
+ * requests from an allowed origin get the allow-origin and expose-headers headers and
+ * continue. Bearer tokens need no cookies, so credentials are never allowed.
+ */
+public class PrecomputedCorsFilter extends OncePerRequestFilter {
+
+    private static final String PREFLIGHT_VARY = String.join(", ", HttpHeaders.ORIGIN,
+            HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS);
+
+    private final boolean anyOrigin;
+
+    private final Set<String> allowedOrigins;
+
+    private final Set<String> allowedMethods = new HashSet<>();
+
+    // lower case, header names are case insensitive
+    private final Set<String> allowedHeaders = new HashSet<>();
+
+    private final String allowMethodsValue;
+
+    private final String allowHeadersValue;
+
+    private final String exposeHeadersValue;
+
+    private final String maxAgeValue;
+
+    public PrecomputedCorsFilter(Collection<String> allowedOrigins, Collection<String> allowedMethods,
+                                 Collection<String> allowedHeaders, Collection<String> exposedHeaders,
+                                 Duration maxAge) {
+        this.anyOrigin = allowedOrigins.contains("*");
+        this.allowedOrigins = new HashSet<>(allowedOrigins);
+        for (String method : allowedMethods) {
+            this.allowedMethods.add(method.toUpperCase(Locale.ROOT));
+        }
+        for (String header : allowedHeaders) {
+            this.allowedHeaders.add(header.toLowerCase(Locale.ROOT));
+        }
+        this.allowMethodsValue = String.join(", ", this.allowedMethods);
+        this.allowHeadersValue = String.join(", ", allowedHeaders);
+        this.exposeHeadersValue = exposedHeaders.isEmpty() ? null : String.join(", ", exposedHeaders);
+        this.maxAgeValue = Long.toString(maxAge.getSeconds());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String origin = request.getHeader(HttpHeaders.ORIGIN);
+        if (origin == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String requestedMethod = request.getHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD);
+        if (requestedMethod != null && HttpMethod.OPTIONS.matches(request.getMethod())) {
+            response.setHeader(HttpHeaders.VARY, PREFLIGHT_VARY);
+            if (!isAllowed(origin) || !allowedMethods.contains(requestedMethod)
+                    || !areAllowed(request.getHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS))) {
+                response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+                return;
+            }
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, anyOrigin ? "*" : origin);
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, allowMethodsValue);
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, allowHeadersValue);
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_MAX_AGE, maxAgeValue);
+            response.setStatus(HttpServletResponse.SC_OK);
+            return;
+        }
+        // same-origin POSTs send an Origin too, requests from other origins just get no headers
+        if (isAllowed(origin)) {
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, anyOrigin ? "*" : origin);
+            if (exposeHeadersValue != null) {
+                response.setHeader(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, exposeHeadersValue);
+            }
+            if (!anyOrigin) {
+                response.addHeader(HttpHeaders.VARY, HttpHeaders.ORIGIN);
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    private boolean isAllowed(String origin) {
+        return anyOrigin || allowedOrigins.contains(origin);
+    }
+
+    private boolean areAllowed(String requestedHeaders) {
+        if (requestedHeaders == null || requestedHeaders.trim().isEmpty()) {
+            return true;
+        }
+        for (String header : requestedHeaders.split(",")) {
+            String name = header.trim().toLowerCase(Locale.ROOT);
+            if (!name.isEmpty() && !allowedHeaders.contains(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
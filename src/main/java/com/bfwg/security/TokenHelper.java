@@ -1,18 +1,44 @@
 package com.bfwg.security;
 
 import com.bfwg.common.TimeProvider;
+import com.bfwg.jfr.TokenSignEvent;
+import com.bfwg.jfr.TokenVerifyEvent;
 import com.bfwg.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.DefaultClaims;
+import io.jsonwebtoken.impl.TextCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mobile.device.Device;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -37,6 +63,8 @@ public class TokenHelper {
     @Value("${jwt.header}")
     private String AUTH_HEADER;
 
+    public static final String ROLES_CLAIM = "roles";
+
     static final String AUDIENCE_UNKNOWN = "unknown";
     static final String AUDIENCE_WEB = "web";
     static final String AUDIENCE_MOBILE = "mobile";
@@ -45,108 +73,453 @@ public class TokenHelper {
     @Autowired
     TimeProvider timeProvider;
 
-    private SignatureAlgorithm SIGNATURE_ALGORITHM = SignatureAlgorithm.HS512;
+    // optional, without a configured ring tokens are signed with SECRET and carry no kid
+    @Autowired(required = false)
+    JwtKeyRing keyRing;
 
-    public String getUsernameFromToken(String token) {
-        String username;
-        try {
-            final Claims claims = this.getAllClaimsFromToken(token);
-            username = claims.getSubject();
-        } catch (Exception e) {
-            username = null;
+    // replaces HS512 for new tokens when jwt.algorithm is ES256 or EdDSA
+    @Autowired(required = false)
+    AsymmetricJwtKeys asymmetricKeys;
+
+    // epoch millis until which HS512 tokens still verify next to an asymmetric key, 0 when never
+    private long hs512AcceptedUntil;
+
+    private static final Set<String> KNOWN_AUDIENCES = new HashSet<>(Arrays.asList(
+            AUDIENCE_UNKNOWN, AUDIENCE_WEB, AUDIENCE_MOBILE, AUDIENCE_TABLET));
+
+    /**
+     * Audience and lifetime per device kind, so a Device is classified once per token.
+     */
+    private enum DeviceKind {
+        UNKNOWN(AUDIENCE_UNKNOWN, false),
+        WEB(AUDIENCE_WEB, false),
+        TABLET(AUDIENCE_TABLET, true),
+        MOBILE(AUDIENCE_MOBILE, true);
+
+        private static final Map<String, DeviceKind> BY_AUDIENCE = new HashMap<>();
+
+        static {
+            for (DeviceKind kind : values()) {
+                BY_AUDIENCE.put(kind.audience, kind);
+            }
+        }
+
+        final String audience;
+        final boolean mobileLifetime;
+
+        DeviceKind(String audience, boolean mobileLifetime) {
+            this.audience = audience;
+            this.mobileLifetime = mobileLifetime;
+        }
+
+        static DeviceKind of(Device device) {
+            return device.isNormal() ? WEB : device.isTablet() ? TABLET : device.isMobile() ? MOBILE : UNKNOWN;
+        }
+
+        static DeviceKind of(String audience) {
+            DeviceKind kind = audience != null ? BY_AUDIENCE.get(audience) : null;
+            return kind != null ? kind : UNKNOWN;
         }
-        return username;
     }
 
-    public Date getIssuedAtDateFromToken(String token) {
-        Date issueAt;
+    // a token with the three claims we issue is well above 100 chars, anything near 4k is junk
+    static final int MIN_TOKEN_LENGTH = 64;
+    static final int MAX_TOKEN_LENGTH = 4096;
+
+    // base64url length of an unpadded 64 byte signature, the size of HS512, ES256 (r||s) and Ed25519 alike
+    private static final int SIGNATURE_LENGTH = 86;
+
+    private static final byte[] ALG_FIELD = "\"alg\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXP_FIELD = "\"exp\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AUD_FIELD = "\"aud\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KID_FIELD = "\"kid\":\"".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final ThreadLocal<Mac> HMAC_SHA512 = ThreadLocal.withInitial(() -> {
         try {
-            final Claims claims = this.getAllClaimsFromToken(token);
-            issueAt = claims.getIssuedAt();
-        } catch (Exception e) {
-            issueAt = null;
+            return Mac.getInstance("HmacSHA512");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
-        return issueAt;
+    });
+
+    private SignatureAlgorithm SIGNATURE_ALGORITHM = SignatureAlgorithm.HS512;
+
+    // derived lazily, SECRET is injected (and replaced by tests) after construction
+    private volatile HmacKey hmacKey;
+
+    /**
+     * An ISO-8601 instant such as 2026-11-01T00:00:00Z. Until then, tokens signed with
+     * jwt.secret keep verifying after switching to ES256 or EdDSA; empty to reject them.
+     */
+    @Value("${jwt.hs512-accepted-until:}")
+    void setHs512AcceptedUntil(String until) {
+        this.hs512AcceptedUntil = until == null || until.trim().isEmpty() ? 0 : Instant.parse(until.trim()).toEpochMilli();
+    }
+
+    public String getUsernameFromToken(String token) {
+        final Claims claims = this.getAllClaimsFromToken(token);
+        return claims != null ? claims.getSubject() : null;
+    }
+
+    public Date getIssuedAtDateFromToken(String token) {
+        final Claims claims = this.getAllClaimsFromToken(token);
+        return claims != null ? claims.getIssuedAt() : null;
     }
 
     public String getAudienceFromToken(String token) {
-        String audience;
-        try {
-            final Claims claims = this.getAllClaimsFromToken(token);
-            audience = claims.getAudience();
-        } catch (Exception e) {
-            audience = null;
-        }
-        return audience;
+        final Claims claims = this.getAllClaimsFromToken(token);
+        return claims != null ? claims.getAudience() : null;
     }
 
     public String refreshToken(String token, Device device) {
-        String refreshedToken;
+        return refreshToken(token, null, device);
+    }
+
+    /**
+     * The {@code roles} claim is rebuilt from {@code authorities}, those of the user just
+     * loaded, or dropped when they are null, so a fresh issue date never vouches for old roles.
+     */
+    public String refreshToken(String token, Collection<? extends GrantedAuthority> authorities, Device device) {
         Date a = timeProvider.now();
-        try {
-            final Claims claims = this.getAllClaimsFromToken(token);
-            claims.setIssuedAt(a);
-            refreshedToken = Jwts.builder()
-                .setClaims(claims)
-                .setExpiration(generateExpirationDate(device))
-                .signWith( SIGNATURE_ALGORITHM, SECRET )
-                .compact();
-        } catch (Exception e) {
-            refreshedToken = null;
+        final Claims claims = this.getAllClaimsFromToken(token);
+        if (claims == null) {
+            return null;
         }
-        return refreshedToken;
+        claims.setIssuedAt(a);
+        setRoles(claims, authorities);
+        TokenSignEvent event = new TokenSignEvent();
+        event.begin();
+        claims.setExpiration(generateExpirationDate(DeviceKind.of(device)));
+        String refreshed = sign(claims);
+        commit(event, refreshed);
+        return refreshed;
+    }
+
+    /**
+     * Re-signs already verified claims with a fresh issue date and the lifetime of
+     * their audience, so no Device has to be resolved. The {@code roles} claim is
+     * rebuilt from {@code authorities} as in {@link #refreshToken(String, Collection, Device)}.
+     */
+    public String renewToken(Claims claims, Collection<? extends GrantedAuthority> authorities) {
+        Date now = timeProvider.now();
+        TokenSignEvent event = new TokenSignEvent();
+        event.begin();
+        claims.setIssuedAt(now);
+        setRoles(claims, authorities);
+        claims.setExpiration(new Date(now.getTime() + expiresIn(DeviceKind.of(claims.getAudience())) * 1000L));
+        String renewed = sign(claims);
+        commit(event, renewed);
+        return renewed;
     }
 
     public String generateToken(String username, Device device) {
-        String audience = generateAudience(device);
-        return Jwts.builder()
+        return generateToken(username, null, device);
+    }
+
+    /**
+     * With authorities, the token carries them in a {@code roles} claim, which lets reads
+     * be authenticated from the token alone while the user store is unavailable.
+     */
+    public String generateToken(String username, Collection<? extends GrantedAuthority> authorities, Device device) {
+        DeviceKind kind = DeviceKind.of(device);
+        TokenSignEvent event = new TokenSignEvent();
+        event.begin();
+        Claims claims = Jwts.claims()
                 .setIssuer( APP_NAME )
                 .setSubject(username)
-                .setAudience(audience)
+                .setAudience(kind.audience)
                 .setIssuedAt(timeProvider.now())
-                .setExpiration(generateExpirationDate(device))
-                .signWith( SIGNATURE_ALGORITHM, SECRET )
+                .setExpiration(generateExpirationDate(kind));
+        setRoles(claims, authorities);
+        String token = sign(claims);
+        commit(event, token);
+        return token;
+    }
+
+    private static void setRoles(Claims claims, Collection<? extends GrantedAuthority> authorities) {
+        if (authorities == null) {
+            claims.remove(ROLES_CLAIM);
+            return;
+        }
+        List<String> roles = new ArrayList<>(authorities.size());
+        for (GrantedAuthority authority : authorities) {
+            roles.add(authority.getAuthority());
+        }
+        claims.put(ROLES_CLAIM, roles);
+    }
+
+    /**
+     * @return the authorities of the {@code roles} claim, null for tokens issued without it
+     */
+    public List<GrantedAuthority> getAuthorities(Claims claims) {
+        Object roles = claims.get(ROLES_CLAIM);
+        if (!(roles instanceof Collection)) {
+            return null;
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        for (Object role : (Collection<?>) roles) {
+            authorities.add(new SimpleGrantedAuthority(String.valueOf(role)));
+        }
+        return authorities;
+    }
+
+    private boolean isAsymmetric() {
+        return asymmetricKeys != null && asymmetricKeys.isActive();
+    }
+
+    private String sign(Claims claims) {
+        if (isAsymmetric()) {
+            return asymmetricKeys.sign(claims);
+        }
+        JwtBuilder builder = Jwts.builder().setClaims(claims);
+        JwtKeyRing.ActiveKey active = keyRing != null ? keyRing.activeKey() : null;
+        if (active == null) {
+            return builder.signWith( SIGNATURE_ALGORITHM, SECRET ).compact();
+        }
+        return builder
+                .setHeaderParam(JwsHeader.KEY_ID, active.getKid())
+                .signWith( SIGNATURE_ALGORITHM, active.getKey() )
                 .compact();
     }
 
-    private String generateAudience(Device device) {
-        String audience = AUDIENCE_UNKNOWN;
-        if (device.isNormal()) {
-            audience = AUDIENCE_WEB;
-        } else if (device.isTablet()) {
-            audience = AUDIENCE_TABLET;
-        } else if (device.isMobile()) {
-            audience = AUDIENCE_MOBILE;
+    private void commit(TokenSignEvent event, String token) {
+        if (event.shouldCommit()) {
+            event.algorithm = isAsymmetric() ? asymmetricKeys.getAlgorithm() : SIGNATURE_ALGORITHM.getValue();
+            event.tokenLength = token.length();
+            event.commit();
         }
-        return audience;
     }
 
+
     private Claims getAllClaimsFromToken(String token) {
-        Claims claims;
+        return verify(token).getClaims();
+    }
+
+    /**
+     * Verifies a compact HS512, ES256 or EdDSA token without throwing. Cheap checks on the shape and
+     * on the unverified header and payload run first, so junk is rejected before any
+     * HMAC or JSON work; they can only reject, the claims are trusted only after the
+     * signature matched.
+     */
+    public TokenVerification verify(String token) {
+        TokenVerifyEvent event = new TokenVerifyEvent();
+        event.begin();
+        TokenVerification verification = doVerify(token);
+        if (event.shouldCommit()) {
+            event.tokenLength = token == null ? 0 : token.length();
+            event.outcome = verification.getStatus().name();
+            event.commit();
+        }
+        return verification;
+    }
+
+    private TokenVerification doVerify(String token) {
+        if (token == null || token.isEmpty()) {
+            return TokenVerification.rejected(TokenStatus.MISSING);
+        }
+        if (token.length() < MIN_TOKEN_LENGTH || token.length() > MAX_TOKEN_LENGTH) {
+            return TokenVerification.rejected(TokenStatus.MALFORMED);
+        }
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+        if (headerEnd <= 0 || payloadEnd <= headerEnd + 1
+                || token.length() - payloadEnd - 1 != SIGNATURE_LENGTH
+                || !isBase64Url(token, 0, headerEnd)
+                || !isBase64Url(token, headerEnd + 1, payloadEnd)
+                || !isBase64Url(token, payloadEnd + 1, token.length())) {
+            return TokenVerification.rejected(TokenStatus.MALFORMED);
+        }
+
+        byte[] header = decodeBase64Url(token, 0, headerEnd);
+        byte[] payload = decodeBase64Url(token, headerEnd + 1, payloadEnd);
+        byte[] signature = decodeBase64Url(token, payloadEnd + 1, token.length());
+        if (header == null || payload == null || signature == null) {
+            return TokenVerification.rejected(TokenStatus.MALFORMED);
+        }
+        // same clock as jjwt used to check expiry
+        long now = System.currentTimeMillis();
+        String algorithm = stringField(header, ALG_FIELD);
+        boolean asymmetric = isAsymmetric() && asymmetricKeys.getAlgorithm().equals(algorithm);
+        // after switching to a key pair HS512 is only accepted during an explicit migration window
+        boolean hs512 = SIGNATURE_ALGORITHM.getValue().equals(algorithm) && (!isAsymmetric() || now < hs512AcceptedUntil);
+        if (!asymmetric && !hs512) {
+            return TokenVerification.rejected(TokenStatus.UNSUPPORTED_ALGORITHM);
+        }
+
+        long unverifiedExpiration = numberField(payload, EXP_FIELD);
+        if (unverifiedExpiration >= 0 && now > unverifiedExpiration * 1000) {
+            return TokenVerification.rejected(TokenStatus.EXPIRED);
+        }
+        String unverifiedAudience = stringField(payload, AUD_FIELD);
+        if (unverifiedAudience != null && !KNOWN_AUDIENCES.contains(unverifiedAudience)) {
+            return TokenVerification.rejected(TokenStatus.INVALID_AUDIENCE);
+        }
+
+        String kid = stringField(header, KID_FIELD);
+        if (asymmetric) {
+            if (!asymmetricKeys.hasKey(kid)) {
+                return TokenVerification.rejected(TokenStatus.UNKNOWN_KEY);
+            }
+            if (!asymmetricKeys.verify(kid, token, payloadEnd, signature)) {
+                return TokenVerification.rejected(TokenStatus.INVALID_SIGNATURE);
+            }
+        } else {
+            SecretKeySpec key;
+            if (keyRing != null && keyRing.isConfigured()) {
+                // with a ring SECRET is never trusted, tokens without a kid need the ring's legacy key
+                key = kid == null ? keyRing.legacyKey() : keyRing.verificationKey(kid);
+            } else {
+                key = kid == null ? hmacKey() : null;
+            }
+            if (key == null) {
+                return TokenVerification.rejected(TokenStatus.UNKNOWN_KEY);
+            }
+            if (!MessageDigest.isEqual(signature, hmacSha512(token, payloadEnd, key))) {
+                return TokenVerification.rejected(TokenStatus.INVALID_SIGNATURE);
+            }
+        }
+
+        Claims claims = parseClaims(payload);
+        if (claims == null) {
+            return TokenVerification.rejected(TokenStatus.MALFORMED);
+        }
+        Date expiration = claims.getExpiration();
+        Date notBefore = claims.getNotBefore();
+        if ((expiration != null && now > expiration.getTime()) || (notBefore != null && now < notBefore.getTime())) {
+            return TokenVerification.rejected(TokenStatus.EXPIRED);
+        }
+        return TokenVerification.valid(claims);
+    }
+
+    private static byte[] hmacSha512(String token, int signingInputLength, SecretKeySpec key) {
+        Mac mac = HMAC_SHA512.get();
+        try {
+            mac.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        mac.update(token.getBytes(StandardCharsets.US_ASCII), 0, signingInputLength);
+        return mac.doFinal();
+    }
+
+    private SecretKeySpec hmacKey() {
+        HmacKey current = hmacKey;
+        if (current == null || !current.secret.equals(SECRET)) {
+            current = new HmacKey(SECRET);
+            hmacKey = current;
+        }
+        return current.key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Claims parseClaims(byte[] payload) {
         try {
-            claims = Jwts.parser()
-                    .setSigningKey(SECRET)
-                    .parseClaimsJws(token)
-                    .getBody();
-        } catch (Exception e) {
-            claims = null;
+            return new DefaultClaims(OBJECT_MAPPER.readValue(payload, Map.class));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isBase64Url(String token, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            char c = token.charAt(i);
+            if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] decodeBase64Url(String token, int from, int to) {
+        if ((to - from) % 4 == 1) {
+            return null;
+        }
+        return Base64.getUrlDecoder().decode(token.substring(from, to));
+    }
+
+    /*
+     * jjwt writes compact JSON, and quotes inside string values are escaped, so a raw
+     * "name": can only be a field name. A field written any other way is not found
+     * and simply skips the pre-check.
+     */
+    private static String stringField(byte[] json, byte[] field) {
+        int start = indexOf(json, field);
+        if (start < 0) {
+            return null;
+        }
+        for (int end = start; end < json.length; end++) {
+            if (json[end] == '\\') {
+                return null;
+            }
+            if (json[end] == '"') {
+                return new String(json, start, end - start, StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static long numberField(byte[] json, byte[] field) {
+        int start = indexOf(json, field);
+        if (start < 0) {
+            return -1;
         }
-        return claims;
+        long value = 0;
+        int end = start;
+        while (end < json.length && json[end] >= '0' && json[end] <= '9' && end - start < 18) {
+            value = value * 10 + (json[end] - '0');
+            end++;
+        }
+        return end > start && (end == json.length || json[end] == ',' || json[end] == '}') ? value : -1;
+    }
+
+    // returns the index right after the match
+    private static int indexOf(byte[] json, byte[] field) {
+        outer:
+        for (int i = 0; i <= json.length - field.length; i++) {
+            for (int j = 0; j < field.length; j++) {
+                if (json[i + j] != field[j]) {
+                    continue outer;
+                }
+            }
+            return i + field.length;
+        }
+        return -1;
     }
 
-    private Date generateExpirationDate(Device device) {
-        long expiresIn = device.isTablet() || device.isMobile() ? MOBILE_EXPIRES_IN : EXPIRES_IN;
+    private Date generateExpirationDate(DeviceKind kind) {
+        long expiresIn = expiresIn(kind);
         return new Date(timeProvider.now().getTime() + expiresIn * 1000);
     }
 
+    private int expiresIn(DeviceKind kind) {
+        return kind.mobileLifetime ? MOBILE_EXPIRES_IN : EXPIRES_IN;
+    }
+
     public int getExpiredIn(Device device) {
-        return device.isMobile() || device.isTablet() ? MOBILE_EXPIRES_IN : EXPIRES_IN;
+        return expiresIn(DeviceKind.of(device));
+    }
+
+    public int getExpiredIn(String audience) {
+        return expiresIn(DeviceKind.of(audience));
     }
 
     public Boolean validateToken(String token, UserDetails userDetails) {
+        final Claims claims = getAllClaimsFromToken(token);
+        return claims != null && validateToken(claims, userDetails);
+    }
+
+    /**
+     * Checks already verified claims against the user they name.
+     */
+    public boolean validateToken(Claims claims, UserDetails userDetails) {
         User user = (User) userDetails;
-        final String username = getUsernameFromToken(token);
-        final Date created = getIssuedAtDateFromToken(token);
+        final String username = claims.getSubject();
+        final Date created = claims.getIssuedAt();
         return (
                 username != null &&
                 username.equals(userDetails.getUsername()) &&
@@ -175,4 +548,15 @@ public class TokenHelper {
         return request.getHeader(AUTH_HEADER);
     }
 
-}
\ No newline at end of file
+    private static final class HmacKey {
+        final String secret;
+        final SecretKeySpec key;
+
+        HmacKey(String secret) {
+            this.secret = secret;
+            // jjwt treats a String signing key as base64
+            this.key = new SecretKeySpec(TextCodec.BASE64.decode(secret), "HmacSHA512");
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.bfwg.security;
+
+/**
+ * Outcome of {@link TokenHelper#verify(String)}, in the order the checks run.
+ */
+public enum TokenStatus {
+    VALID,
+    MISSING,
+    MALFORMED,
+    UNSUPPORTED_ALGORITHM,
+    EXPIRED,
+    INVALID_AUDIENCE,
+    UNKNOWN_KEY,
+    INVALID_SIGNATURE
+}
@@ -0,0 +1,47 @@
+package com.bfwg.security;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * Result of verifying a token: a status and, only for {@link TokenStatus#VALID}
+ * tokens, the signature checked claims.
+ */
+public final class TokenVerification {
+
+    private static final TokenVerification[] REJECTIONS = new TokenVerification[TokenStatus.values().length];
+
+    static {
+        for (TokenStatus status : TokenStatus.values()) {
+            REJECTIONS[status.ordinal()] = new TokenVerification(status, null);
+        }
+    }
+
+    private final TokenStatus status;
+
+    private final Claims claims;
+
+    private TokenVerification(TokenStatus status, Claims claims) {
+        this.status = status;
+        this.claims = claims;
+    }
+
+    static TokenVerification valid(Claims claims) {
+        return new TokenVerification(TokenStatus.VALID, claims);
+    }
+
+    static TokenVerification rejected(TokenStatus status) {
+        return REJECTIONS[status.ordinal()];
+    }
+
+    public boolean isValid() {
+        return status == TokenStatus.VALID;
+    }
+
+    public TokenStatus getStatus() {
+        return status;
+    }
+
+    public Claims getClaims() {
+        return claims;
+    }
+}
@@ -0,0 +1,40 @@
+package com.bfwg.security.auth;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * A request authenticated by a service account API key; the principal is the key's name.
+ */
+public class ApiKeyAuthentication extends AbstractAuthenticationToken {
+
+    private static final long serialVersionUID = 4385236468735103185L;
+
+    private final String name;
+
+    private final String prefix;
+
+    public ApiKeyAuthentication(String name, String prefix, Collection<? extends GrantedAuthority> authorities) {
+        super(authorities);
+        this.name = name;
+        this.prefix = prefix;
+        setAuthenticated(true);
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public Object getCredentials() {
+        // the key is not kept once it is verified
+        return null;
+    }
+
+    @Override
+    public String getPrincipal() {
+        return name;
+    }
+}
@@ -0,0 +1,36 @@
+package com.bfwg.security.auth;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * Checks the {@link VerifiedCredentialCache} before running the password encoder. The
+ * user is still loaded and its account status checked on every login.
+ */
+public class CachingDaoAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final VerifiedCredentialCache credentialCache;
+
+    public CachingDaoAuthenticationProvider(VerifiedCredentialCache credentialCache) {
+        this.credentialCache = credentialCache;
+    }
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+                                                  UsernamePasswordAuthenticationToken authentication)
+            throws AuthenticationException {
+        Object credentials = authentication.getCredentials();
+        if (credentials == null || !credentialCache.isEnabled()) {
+            super.additionalAuthenticationChecks(userDetails, authentication);
+            return;
+        }
+        String password = credentials.toString();
+        if (credentialCache.isVerified(userDetails.getUsername(), password, userDetails.getPassword())) {
+            return;
+        }
+        super.additionalAuthenticationChecks(userDetails, authentication);
+        credentialCache.verified(userDetails.getUsername(), password, userDetails.getPassword());
+    }
+}
@@ -0,0 +1,52 @@
+package com.bfwg.security.auth;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * A request authenticated from verified token claims alone, without loading the user,
+ * while the user store is unavailable. The principal is the token's subject.
+ */
+public class ClaimsAuthentication extends AbstractAuthenticationToken {
+
+    private static final long serialVersionUID = -2386017463329847126L;
+
+    private final String username;
+
+    private final String token;
+
+    private final Date issuedAt;
+
+    public ClaimsAuthentication(String username, String token, Date issuedAt,
+                                Collection<? extends GrantedAuthority> authorities) {
+        super(authorities);
+        this.username = username;
+        this.token = token;
+        this.issuedAt = issuedAt;
+        setAuthenticated(true);
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return when the token vouching for the roles was issued
+     */
+    public Date getIssuedAt() {
+        return issuedAt;
+    }
+
+    @Override
+    public Object getCredentials() {
+        return token;
+    }
+
+    @Override
+    public String getPrincipal() {
+        return username;
+    }
+}
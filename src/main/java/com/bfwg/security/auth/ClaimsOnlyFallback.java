@@ -0,0 +1,136 @@
+package com.bfwg.security.auth;
+
+import com.bfwg.common.CircuitBreaker;
+import com.bfwg.common.TimeProvider;
+import com.bfwg.security.TokenHelper;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Guards the user lookup of {@link TokenAuthenticationFilter} with a circuit breaker. While
+ * it is open the lookup is not attempted at all, and reads are authenticated from the
+ * verified claims of tokens that carry their roles and are younger than the max token age.
+ * Only the configured paths qualify, those whose handlers answer a {@link ClaimsAuthentication}
+ * without the user store; everything else would just fail further down.
+ * Login, refresh and renewal all issue the roles of a user loaded at that moment, after
+ * checking the password reset date, so that age bounds how long a password change or role
+ * removal can go unnoticed.
+ */
+@Component
+public class ClaimsOnlyFallback {
+
+    private final Log logger = LogFactory.getLog(this.getClass());
+
+    private final TokenHelper tokenHelper;
+
+    private final TimeProvider timeProvider;
+
+    private final boolean enabled;
+
+    private final long maxTokenAgeMillis;
+
+    private final Set<String> paths;
+
+    private final CircuitBreaker breaker;
+
+    public ClaimsOnlyFallback(TokenHelper tokenHelper, TimeProvider timeProvider,
+                              @Value("${app.user-lookup.claims-fallback.enabled:true}") boolean enabled,
+                              @Value("${app.user-lookup.claims-fallback.max-token-age:5m}") Duration maxTokenAge,
+                              @Value("${app.user-lookup.claims-fallback.paths:/api/whoami}") List<String> paths,
+                              @Value("${app.user-lookup.breaker.failure-threshold:5}") int failureThreshold,
+                              @Value("${app.user-lookup.breaker.open-for:10s}") Duration openFor,
+                              MeterRegistry meterRegistry) {
+        this.tokenHelper = tokenHelper;
+        this.timeProvider = timeProvider;
+        this.enabled = enabled;
+        this.maxTokenAgeMillis = maxTokenAge.toMillis();
+        this.paths = new HashSet<>(paths);
+        this.breaker = new CircuitBreaker(failureThreshold, openFor.toMillis());
+        Gauge.builder("auth.user-lookup.breaker.open", breaker, b -> b.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .description("1 while user lookups are skipped after repeated failures").register(meterRegistry);
+    }
+
+    /**
+     * @return the permit to report the lookup on and to release once it is over, or null
+     * while lookups are skipped
+     */
+    public CircuitBreaker.Permit allowLookup() {
+        return breaker.allowRequest();
+    }
+
+    public void lookupSucceeded(CircuitBreaker.Permit permit) {
+        permit.onSuccess();
+    }
+
+    public void lookupFailed(CircuitBreaker.Permit permit, RuntimeException e) {
+        if (isPoolBusy(e)) {
+            // the store is fine, this request just found no free connection in time
+            logger.debug("User lookup found the connection pool busy, not counted as a failure", e);
+            return;
+        }
+        boolean wasClosed = breaker.getState() == CircuitBreaker.State.CLOSED;
+        permit.onFailure();
+        if (wasClosed && breaker.getState() != CircuitBreaker.State.CLOSED) {
+            logger.warn("User lookups failing, authenticating reads from token claims", e);
+        }
+    }
+
+    /*
+     * Hikari times out an acquisition with SQLTransientConnectionException, caused by the
+     * last connection error when it could not reach the database and without a cause when
+     * all connections were merely in use.
+     */
+    static boolean isPoolBusy(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientConnectionException) {
+                return cause.getCause() == null;
+            }
+        }
+        return false;
+    }
+
+    CircuitBreaker.State getState() {
+        return breaker.getState();
+    }
+
+    /**
+     * @return the authentication of a GET or HEAD of a configured path with a recent token
+     * carrying its roles, otherwise null
+     */
+    public ClaimsAuthentication authenticate(HttpServletRequest request, String token, Claims claims) {
+        if (!enabled || !isRead(request) || !paths.contains(pathOf(request)) || claims.getSubject() == null) {
+            return null;
+        }
+        Date issuedAt = claims.getIssuedAt();
+        if (issuedAt == null || timeProvider.now().getTime() - issuedAt.getTime() > maxTokenAgeMillis) {
+            return null;
+        }
+        List<GrantedAuthority> authorities = tokenHelper.getAuthorities(claims);
+        return authorities != null
+                ? new ClaimsAuthentication(claims.getSubject(), token, issuedAt, authorities) : null;
+    }
+
+    private static String pathOf(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static boolean isRead(HttpServletRequest request) {
+        String method = request.getMethod();
+        return HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method);
+    }
+}
@@ -0,0 +1,28 @@
+package com.bfwg.security.auth;
+
+import com.bfwg.common.PreencodedJsonResponse;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.web.access.AccessDeniedHandler;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers authenticated requests lacking a role (e.g. a failed @PreAuthorize)
+ * with a 403, written directly like {@link RestAuthenticationEntryPoint} does.
+ */
+@Component
+public class RestAccessDeniedHandler implements AccessDeniedHandler {
+
+    private static final PreencodedJsonResponse FORBIDDEN = PreencodedJsonResponse.of(
+            HttpServletResponse.SC_FORBIDDEN, "forbidden", "Access is denied");
+
+    @Override
+    public void handle(HttpServletRequest request,
+                       HttpServletResponse response,
+                       AccessDeniedException accessDeniedException) throws IOException {
+        FORBIDDEN.writeTo(response);
+    }
+}
@@ -4,6 +4,8 @@ package com.bfwg.security.auth;
  * Created by fan.jin on 2016-11-12.
  */
 
+import com.bfwg.common.PreencodedJsonResponse;
+import com.bfwg.security.TokenStatus;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.stereotype.Component;
@@ -11,6 +13,8 @@ import org.springframework.stereotype.Component;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * Created by fan.jin on 2016-11-07.
@@ -18,13 +22,35 @@ import java.io.IOException;
 @Component
 public class RestAuthenticationEntryPoint implements AuthenticationEntryPoint {
 
+    private static final PreencodedJsonResponse UNAUTHORIZED = PreencodedJsonResponse.of(
+            HttpServletResponse.SC_UNAUTHORIZED, "unauthorized",
+            "Full authentication is required to access this resource", "Bearer");
+
+    // one cached response per reason a presented token was rejected
+    private static final Map<TokenStatus, PreencodedJsonResponse> INVALID_TOKEN = new EnumMap<>(TokenStatus.class);
+
+    static {
+        invalidToken(TokenStatus.MALFORMED, "The access token is malformed");
+        invalidToken(TokenStatus.UNSUPPORTED_ALGORITHM, "The access token algorithm is not supported");
+        invalidToken(TokenStatus.EXPIRED, "The access token expired");
+        invalidToken(TokenStatus.INVALID_AUDIENCE, "The access token audience is not accepted");
+        invalidToken(TokenStatus.UNKNOWN_KEY, "The access token signing key is unknown");
+        invalidToken(TokenStatus.INVALID_SIGNATURE, "The access token signature is invalid");
+    }
+
+    private static void invalidToken(TokenStatus status, String message) {
+        INVALID_TOKEN.put(status, PreencodedJsonResponse.of(HttpServletResponse.SC_UNAUTHORIZED, "invalid_token",
+                message, "Bearer error=\"invalid_token\", error_description=\"" + message + "\""));
+    }
+
     @Override
     public void commence(HttpServletRequest request,
                          HttpServletResponse response,
                          AuthenticationException authException) throws IOException {
         // This is invoked when user tries to access a secured REST resource without supplying any credentials
         // We should just send a 401 Unauthorized response because there is no 'login page' to redirect to
-        response.sendError(HttpServletResponse.SC_UNAUTHORIZED, authException.getMessage());
+        Object tokenStatus = request.getAttribute(TokenAuthenticationFilter.TOKEN_STATUS_ATTRIBUTE);
+        PreencodedJsonResponse body = tokenStatus != null ? INVALID_TOKEN.get(tokenStatus) : null;
+        (body != null ? body : UNAUTHORIZED).writeTo(response);
     }
 }
-
@@ -1,11 +1,20 @@
 package com.bfwg.security.auth;
 
+import com.bfwg.common.CircuitBreaker;
+import com.bfwg.common.PreencodedJsonResponse;
+import com.bfwg.jfr.TokenFilterEvent;
+import com.bfwg.security.PathAccessMatcher;
 import com.bfwg.security.TokenHelper;
+import com.bfwg.security.TokenVerification;
+import com.bfwg.service.ApiKeyService;
+import io.jsonwebtoken.Claims;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import javax.servlet.FilterChain;
@@ -19,15 +28,48 @@ import java.io.IOException;
  */
 public class TokenAuthenticationFilter extends OncePerRequestFilter {
 
+    /**
+     * Request attribute holding the {@link com.bfwg.security.TokenStatus} of a rejected token.
+     */
+    public static final String TOKEN_STATUS_ATTRIBUTE = TokenAuthenticationFilter.class.getName() + ".TOKEN_STATUS";
+
+    private static final PreencodedJsonResponse USER_STORE_UNAVAILABLE = PreencodedJsonResponse.of(
+            HttpServletResponse.SC_SERVICE_UNAVAILABLE, "user_store_unavailable",
+            "Users cannot be loaded right now, retry shortly");
+
     private final Log logger = LogFactory.getLog(this.getClass());
 
     private TokenHelper tokenHelper;
 
     private UserDetailsService userDetailsService;
 
+    private TokenRenewal tokenRenewal;
+
+    private PathAccessMatcher pathAccessMatcher;
+
+    private ApiKeyService apiKeyService;
+
+    private ClaimsOnlyFallback claimsOnlyFallback;
+
     public TokenAuthenticationFilter(TokenHelper tokenHelper, UserDetailsService userDetailsService) {
+        this(tokenHelper, userDetailsService, null, null, null, null);
+    }
+
+    public TokenAuthenticationFilter(TokenHelper tokenHelper, UserDetailsService userDetailsService,
+                                     TokenRenewal tokenRenewal, PathAccessMatcher pathAccessMatcher,
+                                     ApiKeyService apiKeyService, ClaimsOnlyFallback claimsOnlyFallback) {
         this.tokenHelper = tokenHelper;
         this.userDetailsService = userDetailsService;
+        this.tokenRenewal = tokenRenewal;
+        this.pathAccessMatcher = pathAccessMatcher;
+        this.apiKeyService = apiKeyService;
+        this.claimsOnlyFallback = claimsOnlyFallback;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // public paths never look at the token, not even a broken one
+        return pathAccessMatcher != null && pathAccessMatcher.decide(request) == PathAccessMatcher.Access.ANONYMOUS;
     }
 
 
@@ -38,24 +80,114 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
             FilterChain chain
     ) throws IOException, ServletException {
 
-        String username;
+        TokenFilterEvent event = new TokenFilterEvent();
+        event.begin();
+        String outcome = "NO_TOKEN";
+        boolean userLookup = false;
+        boolean unavailable = false;
+
         String authToken = tokenHelper.getToken(request);
 
-        if (authToken != null) {
-            // get username from token
-            username = tokenHelper.getUsernameFromToken(authToken);
-            if (username != null) {
-                // get user
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-                if (tokenHelper.validateToken(authToken, userDetails)) {
+        if (authToken != null && apiKeyService != null && apiKeyService.isApiKey(authToken)) {
+            // service accounts, no token verification and no user lookup
+            ApiKeyAuthentication authentication = apiKeyService.authenticate(authToken);
+            if (authentication != null) {
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+                outcome = "API_KEY";
+            } else {
+                outcome = "INVALID_API_KEY";
+            }
+        } else if (authToken != null) {
+            // verify the token once, the claims carry everything needed below
+            TokenVerification verification = tokenHelper.verify(authToken);
+            if (verification.isValid()) {
+                Claims claims = verification.getClaims();
+                // get user, unless the user store is known to be failing
+                UserDetails userDetails = null;
+                CircuitBreaker.Permit permit = claimsOnlyFallback == null ? null : claimsOnlyFallback.allowLookup();
+                boolean storeAvailable = claimsOnlyFallback == null || permit != null;
+                if (storeAvailable) {
+                    userLookup = true;
+                    try {
+                        userDetails = loadUser(claims.getSubject());
+                        if (permit != null) {
+                            claimsOnlyFallback.lookupSucceeded(permit);
+                        }
+                    } catch (RuntimeException e) {
+                        if (claimsOnlyFallback == null) {
+                            throw e;
+                        }
+                        claimsOnlyFallback.lookupFailed(permit, e);
+                        storeAvailable = false;
+                    } finally {
+                        if (permit != null) {
+                            // frees the trial slot even if the lookup threw an Error
+                            permit.release();
+                        }
+                    }
+                }
+                if (!storeAvailable) {
+                    ClaimsAuthentication authentication = claimsOnlyFallback.authenticate(request, authToken, claims);
+                    if (authentication != null) {
+                        SecurityContextHolder.getContext().setAuthentication(authentication);
+                        outcome = "CLAIMS_ONLY";
+                    } else {
+                        outcome = "USER_STORE_UNAVAILABLE";
+                        unavailable = true;
+                    }
+                } else if (userDetails == null) {
+                    outcome = "UNKNOWN_USER";
+                } else if (tokenHelper.validateToken(claims, userDetails)) {
                     // create authentication
                     TokenBasedAuthentication authentication = new TokenBasedAuthentication(userDetails);
                     authentication.setToken(authToken);
                     SecurityContextHolder.getContext().setAuthentication(authentication);
+                    outcome = "AUTHENTICATED";
+                    renew(authToken, claims, userDetails, response);
+                } else {
+                    outcome = "STALE_TOKEN";
                 }
+            } else {
+                request.setAttribute(TOKEN_STATUS_ATTRIBUTE, verification.getStatus());
+                outcome = verification.getStatus().name();
             }
         }
+        // committed before the chain so the event covers authentication only
+        if (event.shouldCommit()) {
+            event.path = request.getRequestURI();
+            event.outcome = outcome;
+            event.userLookup = userLookup;
+            event.commit();
+        }
+        if (unavailable) {
+            // fail fast rather than a 401 the client would answer with a new login
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            USER_STORE_UNAVAILABLE.writeTo(response);
+            return;
+        }
         chain.doFilter(request, response);
     }
 
-}
\ No newline at end of file
+    private void renew(String authToken, Claims claims, UserDetails userDetails, HttpServletResponse response) {
+        if (tokenRenewal == null || !tokenRenewal.isEnabled()) {
+            return;
+        }
+        String renewed = tokenRenewal.renew(authToken, claims, userDetails.getAuthorities());
+        if (renewed != null) {
+            response.setHeader(tokenRenewal.getHeader(), renewed);
+        }
+    }
+
+    private UserDetails loadUser(String username) {
+        if (username == null) {
+            return null;
+        }
+        try {
+            return userDetailsService.loadUserByUsername(username);
+        } catch (UsernameNotFoundException e) {
+            // validly signed token of a deleted user, continue unauthenticated
+            return null;
+        }
+    }
+
+}
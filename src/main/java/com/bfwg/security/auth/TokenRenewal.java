@@ -0,0 +1,153 @@
+package com.bfwg.security.auth;
+
+import com.bfwg.common.TimeProvider;
+import com.bfwg.security.TokenHelper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.impl.DefaultClaims;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in sliding sessions: a verified token close to its expiry gets a renewed
+ * token in a response header, so clients need no separate /auth/refresh call.
+ * Each token is renewed at most once; requests racing with the same token all
+ * receive the one renewed token. Renewals are tracked until the token they replace
+ * expires, and dropped by a purge in the background so a request never scans them.
+ */
+@Component
+public class TokenRenewal {
+
+    private final Log logger = LogFactory.getLog(this.getClass());
+
+    private final TokenHelper tokenHelper;
+
+    private final TimeProvider timeProvider;
+
+    private final boolean enabled;
+
+    private final long thresholdMillis;
+
+    private final String header;
+
+    private final int maxTracked;
+
+    private final Duration purgeInterval;
+
+    private ScheduledExecutorService purger;
+
+    // renewed tokens by the signature of the token they replace, kept until that one expires
+    private final ConcurrentMap<String, Renewed> renewals = new ConcurrentHashMap<>();
+
+    public TokenRenewal(TokenHelper tokenHelper, TimeProvider timeProvider,
+                        @Value("${jwt.renewal.enabled:false}") boolean enabled,
+                        @Value("${jwt.renewal.threshold:60s}") Duration threshold,
+                        @Value("${jwt.renewal.header:X-Renewed-Token}") String header,
+                        @Value("${jwt.renewal.max-tracked:100000}") int maxTracked,
+                        @Value("${jwt.renewal.purge-interval:30s}") Duration purgeInterval) {
+        this.tokenHelper = tokenHelper;
+        this.timeProvider = timeProvider;
+        this.enabled = enabled;
+        this.thresholdMillis = threshold.toMillis();
+        this.header = header;
+        this.maxTracked = maxTracked;
+        this.purgeInterval = purgeInterval;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-renewal-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = purgeInterval.toMillis();
+        purger.scheduleWithFixedDelay(this::purgeQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (purger != null) {
+            purger.shutdownNow();
+        }
+    }
+
+    private void purgeQuietly() {
+        try {
+            purge();
+        } catch (RuntimeException e) {
+            // a failed task would end the schedule
+            logger.warn("Could not purge token renewals", e);
+        }
+    }
+
+    /**
+     * Drops the renewals of tokens that have expired, nobody can present those anymore.
+     */
+    void purge() {
+        long now = timeProvider.now().getTime();
+        renewals.values().removeIf(entry -> entry.replacedExpiresAt < now);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * @param authorities those of the user just loaded, they replace the token's roles claim
+     * @return the renewed token, or null if the token is not due or renewal is off
+     */
+    public String renew(String token, Claims claims, Collection<? extends GrantedAuthority> authorities) {
+        Date expiration = claims.getExpiration();
+        long now = timeProvider.now().getTime();
+        if (!enabled || expiration == null || expiration.getTime() - now > thresholdMillis) {
+            return null;
+        }
+        String key = token.substring(token.lastIndexOf('.') + 1);
+        Renewed renewed = renewals.get(key);
+        if (renewed != null) {
+            return renewed.token;
+        }
+        if (renewals.size() >= maxTracked) {
+            // until the next purge clients fall back to /auth/refresh rather than this growing without bound
+            return null;
+        }
+        // the claims are shared with the authentication, renew a copy
+        return renewals.computeIfAbsent(key, k -> new Renewed(
+                tokenHelper.renewToken(new DefaultClaims(claims), authorities), expiration.getTime())).token;
+    }
+
+    int tracked() {
+        return renewals.size();
+    }
+
+    private static final class Renewed {
+        final String token;
+        final long replacedExpiresAt;
+
+        Renewed(String token, long replacedExpiresAt) {
+            this.token = token;
+            this.replacedExpiresAt = replacedExpiresAt;
+        }
+    }
+}
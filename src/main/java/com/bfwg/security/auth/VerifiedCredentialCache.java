@@ -0,0 +1,128 @@
+package com.bfwg.security.auth;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opt-in memory of the last password that passed bcrypt per user, so clients that log in
+ * with the same credentials over and over skip the hash. Entries hold an HMAC of the
+ * password under a key generated per process, never the password, and are bound to the
+ * stored hash: they stop matching when the password changes, even on another instance.
+ */
+@Component
+public class VerifiedCredentialCache {
+
+    private final boolean enabled;
+
+    private final long ttlMillis;
+
+    private final int maxSize;
+
+    private final SecretKeySpec key;
+
+    private final ThreadLocal<Mac> macs;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    public VerifiedCredentialCache(@Value("${app.login-cache.enabled:false}") boolean enabled,
+                                   @Value("${app.login-cache.ttl:5m}") Duration ttl,
+                                   @Value("${app.login-cache.max-size:10000}") int maxSize,
+                                   MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.ttlMillis = ttl.toMillis();
+        this.maxSize = maxSize;
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, "HmacSHA256");
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        // hits are bcrypt verifications avoided
+        this.hits = Counter.builder("auth.login.cache").tag("result", "hit")
+                .description("Logins verified from the credential cache instead of bcrypt").register(meterRegistry);
+        this.misses = Counter.builder("auth.login.cache").tag("result", "miss")
+                .description("Logins verified with bcrypt").register(meterRegistry);
+        meterRegistry.gaugeMapSize("auth.login.cache.size", Collections.emptyList(), entries);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true if this password was verified against {@code storedHash} within the TTL
+     */
+    public boolean isVerified(String username, String password, String storedHash) {
+        if (!enabled) {
+            return false;
+        }
+        Entry entry = entries.get(username);
+        boolean hit = entry != null
+                && entry.expiresAt > System.currentTimeMillis()
+                && entry.storedHash.equals(storedHash)
+                && MessageDigest.isEqual(entry.passwordMac, mac(password));
+        (hit ? hits : misses).increment();
+        return hit;
+    }
+
+    public void verified(String username, String password, String storedHash) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (entries.size() >= maxSize && !entries.containsKey(username)) {
+            entries.values().removeIf(entry -> entry.expiresAt <= now);
+            if (entries.size() >= maxSize) {
+                return;
+            }
+        }
+        entries.put(username, new Entry(mac(password), storedHash, now + ttlMillis));
+    }
+
+    public void invalidate(String username) {
+        if (username != null) {
+            entries.remove(username);
+        }
+    }
+
+    private byte[] mac(String password) {
+        return macs.get().doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static final class Entry {
+        final byte[] passwordMac;
+        final String storedHash;
+        final long expiresAt;
+
+        Entry(byte[] passwordMac, String storedHash, long expiresAt) {
+            this.passwordMac = passwordMac;
+            this.storedHash = storedHash;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.bfwg.service;
+
+import java.util.List;
+import java.util.Set;
+
+import com.bfwg.model.ApiKey;
+import com.bfwg.model.NewApiKey;
+import com.bfwg.model.UserRoleName;
+import com.bfwg.security.auth.ApiKeyAuthentication;
+
+public interface ApiKeyService {
+
+	/**
+	 * Creates a key for a service account. The key is only part of the result, it
+	 * cannot be recovered later.
+	 */
+	NewApiKey create(String name, Set<UserRoleName> roles);
+
+	List<ApiKey> findAll();
+
+	/**
+	 * @return false if there is no such key or it was revoked already
+	 */
+	boolean revoke(Long id);
+
+	/**
+	 * Whether a bearer credential has the API key format, rather than being a JWT.
+	 */
+	boolean isApiKey(String credential);
+
+	/**
+	 * @return the authentication for a valid, unrevoked key, otherwise null
+	 */
+	ApiKeyAuthentication authenticate(String key);
+}
@@ -0,0 +1,18 @@
+package com.bfwg.service;
+
+import java.util.Iterator;
+
+import com.bfwg.model.UserImportRecord;
+
+public interface UserProvisioningService {
+
+	/**
+	 * Creates a user for every record, committing in chunks. Returns the number of
+	 * users created; a failing chunk is rolled back and aborts the import.
+	 */
+	long importUsers(Iterator<UserImportRecord> records, ProgressListener listener);
+
+	interface ProgressListener {
+		void chunkCommitted(long importedSoFar);
+	}
+}
@@ -3,6 +3,7 @@ package com.bfwg.service;
 import java.util.List;
 
 import com.bfwg.model.User;
+import com.bfwg.model.UserSummary;
 
 /**
  * Created by fan.jin on 2016-10-15.
@@ -14,5 +15,11 @@ public interface UserService {
 
 	List<User> findAll();
 
+	UserSummary findSummaryById(Long id);
+
+	UserSummary findSummaryByUsername(String username);
+
+	List<UserSummary> findAllSummaries();
+
 	void changePassword(String oldPassword, String newPassword);
 }
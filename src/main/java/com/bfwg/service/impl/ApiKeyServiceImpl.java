@@ -0,0 +1,247 @@
+package com.bfwg.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Service;
+
+import com.bfwg.model.ApiKey;
+import com.bfwg.model.NewApiKey;
+import com.bfwg.model.UserRoleName;
+import com.bfwg.repository.ApiKeyRepository;
+import com.bfwg.security.auth.ApiKeyAuthentication;
+import com.bfwg.service.ApiKeyService;
+
+/**
+ * Keys look like {@code bfwg_<prefix>_<secret>}. The database holds an HMAC-SHA256 of the
+ * whole key under app.api-keys.pepper, not a password hash: the secret is 256 random bits,
+ * so a slow hash would add cost without adding safety. Unrevoked keys are indexed in
+ * memory by prefix, making a lookup one map access and one HMAC. The index is reloaded
+ * every app.api-keys.refresh-interval to pick up changes made by other instances. The
+ * pepper has no default: shared with jwt.secret, rotating that would void every key, so
+ * without it keys can neither be created nor used.
+ */
+@Service
+public class ApiKeyServiceImpl implements ApiKeyService {
+
+	protected final Log LOGGER = LogFactory.getLog(getClass());
+
+	static final String KEY_START = "bfwg_";
+
+	static final int PREFIX_LENGTH = 8;
+
+	private static final int SECRET_BYTES = 32;
+
+	private static final char[] PREFIX_ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+	// bfwg_ + prefix + _ + 43 chars of unpadded base64url
+	private static final int KEY_LENGTH = KEY_START.length() + PREFIX_LENGTH + 1 + 43;
+
+	private final ApiKeyRepository apiKeyRepository;
+
+	private final SecretKeySpec pepper;
+
+	private final Duration refreshInterval;
+
+	private final SecureRandom random = new SecureRandom();
+
+	private final ThreadLocal<Mac> macs;
+
+	private volatile Map<String, IndexedKey> index;
+
+	private ScheduledExecutorService refresher;
+
+	public ApiKeyServiceImpl(ApiKeyRepository apiKeyRepository,
+			@Value("${app.api-keys.pepper:}") String pepper,
+			@Value("${app.api-keys.refresh-interval:30s}") Duration refreshInterval) {
+		this.apiKeyRepository = apiKeyRepository;
+		if (pepper == null || pepper.isEmpty()) {
+			this.pepper = null;
+			LOGGER.warn("app.api-keys.pepper is not set, service account API keys are disabled");
+		} else {
+			this.pepper = new SecretKeySpec(pepper.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+		}
+		this.refreshInterval = refreshInterval;
+		this.macs = ThreadLocal.withInitial(this::newMac);
+	}
+
+	@PostConstruct
+	public void start() {
+		// the first lookup loads the index, this only keeps it current
+		refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "api-key-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long interval = refreshInterval.toMillis();
+		refresher.scheduleWithFixedDelay(this::refreshQuietly, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		refresher.shutdownNow();
+	}
+
+	@Override
+	public NewApiKey create(String name, Set<UserRoleName> roles) {
+		if (pepper == null) {
+			throw new IllegalStateException("API keys need app.api-keys.pepper");
+		}
+		if (name == null || name.trim().isEmpty() || roles == null || roles.isEmpty()) {
+			throw new IllegalArgumentException("An API key needs a name and at least one role");
+		}
+		String prefix = newPrefix();
+		byte[] secret = new byte[SECRET_BYTES];
+		random.nextBytes(secret);
+		String key = KEY_START + prefix + "_" + Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+
+		ApiKey apiKey = new ApiKey();
+		apiKey.setName(name.trim());
+		apiKey.setPrefix(prefix);
+		apiKey.setDigest(Base64.getEncoder().encodeToString(digest(key)));
+		apiKey.setRoles(EnumSet.copyOf(roles));
+		apiKey.setCreatedAt(new Timestamp(System.currentTimeMillis()));
+		apiKey = apiKeyRepository.save(apiKey);
+
+		synchronized (this) {
+			if (index != null) {
+				index.put(prefix, new IndexedKey(apiKey));
+			}
+		}
+		LOGGER.info("Created API key " + prefix + " for '" + apiKey.getName() + "' with roles " + apiKey.getRoles());
+		return new NewApiKey(apiKey, key);
+	}
+
+	@Override
+	public List<ApiKey> findAll() {
+		return apiKeyRepository.findAll();
+	}
+
+	@Override
+	public boolean revoke(Long id) {
+		ApiKey apiKey = apiKeyRepository.findById(id).orElse(null);
+		if (apiKey == null || apiKey.isRevoked()) {
+			return false;
+		}
+		apiKey.setRevokedAt(new Timestamp(System.currentTimeMillis()));
+		apiKeyRepository.save(apiKey);
+		synchronized (this) {
+			if (index != null) {
+				index.remove(apiKey.getPrefix());
+			}
+		}
+		LOGGER.info("Revoked API key " + apiKey.getPrefix() + " of '" + apiKey.getName() + "'");
+		return true;
+	}
+
+	@Override
+	public boolean isApiKey(String credential) {
+		return credential != null && credential.startsWith(KEY_START);
+	}
+
+	@Override
+	public ApiKeyAuthentication authenticate(String key) {
+		if (pepper == null || key == null || key.length() != KEY_LENGTH || !key.startsWith(KEY_START)
+				|| key.charAt(KEY_START.length() + PREFIX_LENGTH) != '_') {
+			return null;
+		}
+		Map<String, IndexedKey> keys = index;
+		if (keys == null) {
+			keys = load();
+		}
+		IndexedKey indexed = keys.get(key.substring(KEY_START.length(), KEY_START.length() + PREFIX_LENGTH));
+		if (indexed == null || !MessageDigest.isEqual(indexed.digest, digest(key))) {
+			return null;
+		}
+		return new ApiKeyAuthentication(indexed.name, indexed.prefix, indexed.authorities);
+	}
+
+	private synchronized Map<String, IndexedKey> load() {
+		if (index == null) {
+			refresh();
+		}
+		return index;
+	}
+
+	synchronized void refresh() {
+		Map<String, IndexedKey> keys = new ConcurrentHashMap<>();
+		for (ApiKey apiKey : apiKeyRepository.findByRevokedAtIsNull()) {
+			keys.put(apiKey.getPrefix(), new IndexedKey(apiKey));
+		}
+		index = keys;
+	}
+
+	private void refreshQuietly() {
+		try {
+			refresh();
+		} catch (RuntimeException e) {
+			// keeps the previous keys, a failed task would end the schedule
+			LOGGER.warn("Could not reload the API keys", e);
+		}
+	}
+
+	private String newPrefix() {
+		Map<String, IndexedKey> keys = index != null ? index : load();
+		char[] prefix = new char[PREFIX_LENGTH];
+		do {
+			for (int i = 0; i < prefix.length; i++) {
+				prefix[i] = PREFIX_ALPHABET[random.nextInt(PREFIX_ALPHABET.length)];
+			}
+		} while (keys.containsKey(new String(prefix)));
+		return new String(prefix);
+	}
+
+	private byte[] digest(String key) {
+		return macs.get().doFinal(key.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private Mac newMac() {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(pepper);
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 is not available", e);
+		}
+	}
+
+	private static final class IndexedKey {
+		final String name;
+		final String prefix;
+		final byte[] digest;
+		final List<GrantedAuthority> authorities = new ArrayList<>();
+
+		IndexedKey(ApiKey apiKey) {
+			this.name = apiKey.getName();
+			this.prefix = apiKey.getPrefix();
+			this.digest = Base64.getDecoder().decode(apiKey.getDigest());
+			for (UserRoleName role : apiKey.getRoles()) {
+				authorities.add(new SimpleGrantedAuthority(role.name()));
+			}
+		}
+	}
+}
@@ -1,12 +1,21 @@
 package com.bfwg.service.impl;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import com.bfwg.common.SingleFlight;
+import com.bfwg.datasource.ReadYourWrites;
+import com.bfwg.jfr.UserLookupEvent;
 import com.bfwg.model.User;
 import com.bfwg.repository.UserRepository;
 
@@ -21,18 +30,59 @@ public class CustomUserDetailsService implements UserDetailsService {
 
 	private UserRepository userRepository;
 
-	public CustomUserDetailsService(UserRepository userRepository) {
+	private KnownUsernameFilter knownUsernames;
+
+	private ReadYourWrites readYourWrites;
+
+	private final SingleFlight<String, User> lookups = new SingleFlight<>();
+
+	private final long lookupTimeoutMillis;
+
+	public CustomUserDetailsService(UserRepository userRepository, KnownUsernameFilter knownUsernames,
+			ReadYourWrites readYourWrites, @Value("${app.user-lookup.timeout:5s}") Duration lookupTimeout) {
 		this.userRepository = userRepository;
+		this.knownUsernames = knownUsernames;
+		this.readYourWrites = readYourWrites;
+		this.lookupTimeoutMillis = lookupTimeout.toMillis();
 	}
 
 	@Override
 	public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-		User user = userRepository.findByUsername(username);
+		UserLookupEvent event = new UserLookupEvent();
+		event.begin();
+		boolean known = knownUsernames.mightExist(username);
+		User user = known ? findUser(username) : null;
+		if (event.shouldCommit()) {
+			event.found = user != null;
+			event.rejectedByFilter = !known;
+			event.commit();
+		}
 		if (user == null) {
-			throw new UsernameNotFoundException(String.format("No user found with username '%s'.", username));
+			throw new UnknownUsernameException(username);
 		} else {
 			return user;
 		}
 	}
 
+	/*
+	 * Concurrent requests for the same user share one query, each gets its own copy
+	 * of the result. A replica may not have the latest password reset date of a
+	 * user changed here, those reads go to the primary on their own.
+	 */
+	private User findUser(String username) {
+		if (readYourWrites.isRecentlyWritten(username)) {
+			return ReadYourWrites.onPrimary(() -> userRepository.findByUsername(username));
+		}
+		try {
+			User user = lookups.execute(User.normalizeUsername(username), () -> userRepository.findByUsername(username),
+					lookupTimeoutMillis, TimeUnit.MILLISECONDS);
+			return user != null ? user.copy() : null;
+		} catch (TimeoutException e) {
+			throw new AuthenticationServiceException("Timed out waiting for the lookup of user '" + username + "'", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AuthenticationServiceException("Interrupted waiting for the lookup of user '" + username + "'", e);
+		}
+	}
+
 }
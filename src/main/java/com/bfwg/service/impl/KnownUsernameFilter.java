@@ -0,0 +1,245 @@
+package com.bfwg.service.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.bfwg.model.User;
+
+/**
+ * Bloom filter over the normalized usernames in USERS, so lookups of names that
+ * definitely do not exist can be rejected without a query. It answers "might exist"
+ * until the first build finishes and for deleted users until the next rebuild,
+ * both of which only cost the query it would otherwise save.
+ *
+ * Only users created through this instance are added right away. Users created on
+ * other instances or directly in the database are rejected until the next rebuild,
+ * every app.username-filter.rebuild-interval, so the filter is exact on a single node
+ * only and off unless app.username-filter.enabled is set. Ids come from a pooled
+ * sequence and interleave between instances, so no cheap query tells a rebuild is due.
+ * A rebuild scans every username without blocking lookups or imports; users added
+ * while it runs are carried over into the new filter.
+ */
+@Component
+public class KnownUsernameFilter {
+
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+
+	private static final int MIN_CAPACITY = 1024;
+
+	protected final Log LOGGER = LogFactory.getLog(getClass());
+
+	private final JdbcTemplate jdbcTemplate;
+
+	// guards filter writes and addedDuringRebuild, never held during a scan
+	private final Object writeLock = new Object();
+
+	// one scan at a time
+	private final Object rebuildLock = new Object();
+
+	private final boolean enabled;
+
+	private final Duration rebuildInterval;
+
+	private volatile BloomFilter filter;
+
+	// usernames added while a scan runs, null when none runs
+	private List<String> addedDuringRebuild;
+
+	private ScheduledExecutorService rebuilder;
+
+	public KnownUsernameFilter(JdbcTemplate jdbcTemplate,
+			@Value("${app.username-filter.enabled:false}") boolean enabled,
+			@Value("${app.username-filter.rebuild-interval:10m}") Duration rebuildInterval) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.enabled = enabled;
+		this.rebuildInterval = rebuildInterval;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void start() {
+		if (!enabled) {
+			// never built, so every name might exist
+			return;
+		}
+		rebuild();
+		if (rebuilder != null) {
+			return;
+		}
+		rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "username-filter-rebuild");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long interval = rebuildInterval.toMillis();
+		rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (rebuilder != null) {
+			rebuilder.shutdownNow();
+		}
+	}
+
+	private void rebuildQuietly() {
+		try {
+			rebuild();
+		} catch (RuntimeException e) {
+			// keeps the previous filter, a failed task would end the schedule
+			LOGGER.warn("Could not rebuild the username filter", e);
+		}
+	}
+
+	public boolean mightExist(String username) {
+		if (username == null) {
+			return false;
+		}
+		BloomFilter current = filter;
+		return current == null || current.mightContain(User.normalizeUsername(username));
+	}
+
+	/**
+	 * Registers a user created after the last rebuild; call after the insert committed.
+	 */
+	public void add(String username) {
+		String normalized = User.normalizeUsername(username);
+		boolean full;
+		synchronized (writeLock) {
+			if (filter == null) {
+				return;
+			}
+			// an overfull filter only answers "might exist" more often
+			filter.put(normalized);
+			if (addedDuringRebuild != null) {
+				addedDuringRebuild.add(normalized);
+			}
+			full = filter.isFull() && addedDuringRebuild == null;
+		}
+		if (full) {
+			rebuildSoon();
+		}
+	}
+
+	private synchronized void rebuildSoon() {
+		if (rebuilder != null) {
+			rebuilder.execute(this::rebuildQuietly);
+		}
+	}
+
+	public void rebuild() {
+		if (!enabled) {
+			return;
+		}
+		synchronized (rebuildLock) {
+			synchronized (writeLock) {
+				addedDuringRebuild = new ArrayList<>();
+			}
+			try {
+				long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM USERS", Long.class);
+				// leave room to grow before the next rebuild
+				BloomFilter rebuilt = new BloomFilter(Math.max(MIN_CAPACITY, count * 2), FALSE_POSITIVE_RATE);
+				jdbcTemplate.query("SELECT normalized_username FROM USERS", rs -> {
+					rebuilt.put(rs.getString(1));
+				});
+				synchronized (writeLock) {
+					// committed after the scan's snapshot, or missed by it
+					for (String username : addedDuringRebuild) {
+						rebuilt.put(username);
+					}
+					filter = rebuilt;
+				}
+				LOGGER.debug("Rebuilt username filter with " + count + " users");
+			} finally {
+				synchronized (writeLock) {
+					addedDuringRebuild = null;
+				}
+			}
+		}
+	}
+
+	static final class BloomFilter {
+
+		private final AtomicLongArray bits;
+
+		private final long bitCount;
+
+		private final int hashCount;
+
+		private final long capacity;
+
+		private long size;
+
+		BloomFilter(long capacity, double falsePositiveRate) {
+			long words = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)) / 64);
+			this.bits = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, words)));
+			this.bitCount = bits.length() * 64L;
+			this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+			this.capacity = capacity;
+		}
+
+		boolean isFull() {
+			return size >= capacity;
+		}
+
+		void put(String value) {
+			long h1 = hash(value);
+			long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+			for (int i = 0; i < hashCount; i++) {
+				long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+				int word = (int) (bit >>> 6);
+				long mask = 1L << bit;
+				long current;
+				do {
+					current = bits.get(word);
+				} while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+			}
+			size++;
+		}
+
+		boolean mightContain(String value) {
+			long h1 = hash(value);
+			long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+			for (int i = 0; i < hashCount; i++) {
+				long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+				if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		// 64 bit FNV-1a over the chars, finished with the murmur3 mixer
+		private static long hash(String value) {
+			long hash = 0xcbf29ce484222325L;
+			for (int i = 0; i < value.length(); i++) {
+				hash ^= value.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+			return mix(hash);
+		}
+
+		private static long mix(long h) {
+			h ^= h >>> 33;
+			h *= 0xff51afd7ed558ccdL;
+			h ^= h >>> 33;
+			h *= 0xc4ceb9fe1a85ec53L;
+			h ^= h >>> 33;
+			return h;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.bfwg.service.impl;
+
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+/**
+ * Unknown usernames are an expected outcome (typos, deleted users, credential
+ * stuffing), so this exception skips the stack trace capture.
+ */
+public class UnknownUsernameException extends UsernameNotFoundException {
+
+	private static final long serialVersionUID = 4166146410424565474L;
+
+	public UnknownUsernameException(String username) {
+		super("No user found with username '" + username + "'.");
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
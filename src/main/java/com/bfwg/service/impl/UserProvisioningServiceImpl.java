@@ -0,0 +1,200 @@
+package com.bfwg.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.bfwg.model.Authority;
+import com.bfwg.model.User;
+import com.bfwg.model.UserImportRecord;
+import com.bfwg.model.UserRoleName;
+import com.bfwg.service.UserProvisioningService;
+
+/**
+ * Hashes each chunk on the import hash pool while the previous chunk is being
+ * written, and writes every chunk in its own transaction so Hibernate can batch
+ * the USERS and USER_AUTHORITY inserts. A failure stops the hashing still in
+ * flight.
+ */
+@Service
+public class UserProvisioningServiceImpl implements UserProvisioningService {
+
+	protected final Log LOGGER = LogFactory.getLog(getClass());
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final PasswordEncoder passwordEncoder;
+
+	private final ThreadPoolTaskExecutor importHashExecutor;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final KnownUsernameFilter knownUsernames;
+
+	@Value("${app.import.chunk-size}")
+	private int chunkSize;
+
+	public UserProvisioningServiceImpl(PasswordEncoder passwordEncoder,
+			@Qualifier("importHashExecutor") ThreadPoolTaskExecutor importHashExecutor,
+			PlatformTransactionManager transactionManager, KnownUsernameFilter knownUsernames) {
+		this.passwordEncoder = passwordEncoder;
+		this.importHashExecutor = importHashExecutor;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.knownUsernames = knownUsernames;
+	}
+
+	@Override
+	public long importUsers(Iterator<UserImportRecord> records, ProgressListener listener) {
+		Map<UserRoleName, Long> authorityIds = loadAuthorityIds();
+		AtomicBoolean failed = new AtomicBoolean();
+		long imported = 0;
+		try {
+			List<UserImportRecord> chunk = nextChunk(records, authorityIds);
+			CompletableFuture<List<User>> hashed = hashChunk(chunk, failed);
+			while (!chunk.isEmpty()) {
+				List<User> users = join(hashed);
+				// start hashing the next chunk before writing this one
+				List<UserImportRecord> written = chunk;
+				chunk = nextChunk(records, authorityIds);
+				hashed = hashChunk(chunk, failed);
+				persist(written, users, authorityIds);
+				for (User user : users) {
+					knownUsernames.add(user.getUsername());
+				}
+				imported += users.size();
+				LOGGER.debug("Imported " + imported + " users");
+				listener.chunkCommitted(imported);
+			}
+		} catch (RuntimeException e) {
+			// the hashing tasks of the next chunk stop at their next record
+			failed.set(true);
+			throw e;
+		}
+		return imported;
+	}
+
+	private Map<UserRoleName, Long> loadAuthorityIds() {
+		Map<UserRoleName, Long> ids = new EnumMap<>(UserRoleName.class);
+		transactionTemplate.executeWithoutResult(status -> {
+			for (Authority authority : entityManager
+					.createQuery("select a from Authority a", Authority.class).getResultList()) {
+				ids.put(authority.getName(), authority.getId());
+			}
+		});
+		return ids;
+	}
+
+	private List<UserImportRecord> nextChunk(Iterator<UserImportRecord> records, Map<UserRoleName, Long> authorityIds) {
+		List<UserImportRecord> chunk = new ArrayList<>(chunkSize);
+		while (chunk.size() < chunkSize && records.hasNext()) {
+			UserImportRecord record = records.next();
+			if (record.getUsername() == null || record.getUsername().isEmpty()) {
+				throw new IllegalArgumentException("Missing username after " + chunk.size() + " records of the chunk.");
+			}
+			if (record.getPassword() == null || record.getPassword().isEmpty()) {
+				throw new IllegalArgumentException("Missing password for user '" + record.getUsername() + "'.");
+			}
+			for (UserRoleName role : roles(record)) {
+				if (!authorityIds.containsKey(role)) {
+					throw new IllegalArgumentException("Unknown role " + role + " for user '" + record.getUsername() + "'.");
+				}
+			}
+			chunk.add(record);
+		}
+		return chunk;
+	}
+
+	/*
+	 * One task per pool thread works through the chunk, so an import never queues
+	 * more than that and a failure, here or in the import, ends it early.
+	 */
+	private CompletableFuture<List<User>> hashChunk(List<UserImportRecord> chunk, AtomicBoolean failed) {
+		User[] users = new User[chunk.size()];
+		AtomicInteger next = new AtomicInteger();
+		int workers = Math.min(importHashExecutor.getMaxPoolSize(), chunk.size());
+		List<CompletableFuture<Void>> tasks = new ArrayList<>(workers);
+		for (int w = 0; w < workers; w++) {
+			tasks.add(CompletableFuture.runAsync(() -> {
+				int i;
+				while (!failed.get() && (i = next.getAndIncrement()) < users.length) {
+					try {
+						users[i] = toUser(chunk.get(i));
+					} catch (RuntimeException e) {
+						failed.set(true);
+						throw e;
+					}
+				}
+			}, importHashExecutor));
+		}
+		return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).thenApply(done -> Arrays.asList(users));
+	}
+
+	private User toUser(UserImportRecord record) {
+		User user = new User();
+		user.setUsername(record.getUsername());
+		user.setPassword(passwordEncoder.encode(record.getPassword()));
+		user.setFirstName(record.getFirstName());
+		user.setLastName(record.getLastName());
+		user.setEmail(record.getEmail());
+		user.setPhoneNumber(record.getPhoneNumber());
+		user.setEnabled(record.isEnabled());
+		return user;
+	}
+
+	private void persist(List<UserImportRecord> records, List<User> users, Map<UserRoleName, Long> authorityIds) {
+		transactionTemplate.executeWithoutResult(status -> {
+			Map<UserRoleName, Authority> authorities = new EnumMap<>(UserRoleName.class);
+			authorityIds.forEach((role, id) -> authorities.put(role, entityManager.getReference(Authority.class, id)));
+			for (int i = 0; i < users.size(); i++) {
+				User user = users.get(i);
+				List<Authority> userAuthorities = new ArrayList<>();
+				for (UserRoleName role : roles(records.get(i))) {
+					userAuthorities.add(authorities.get(role));
+				}
+				user.setAuthorities(userAuthorities);
+				entityManager.persist(user);
+			}
+			entityManager.flush();
+			entityManager.clear();
+		});
+	}
+
+	private static List<UserRoleName> roles(UserImportRecord record) {
+		return record.getRoles() == null || record.getRoles().isEmpty()
+				? Collections.singletonList(UserRoleName.ROLE_USER)
+				: record.getRoles();
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
@@ -1,22 +1,26 @@
 package com.bfwg.service.impl;
 
+import java.sql.Timestamp;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import com.bfwg.datasource.ReadYourWrites;
 import com.bfwg.model.User;
+import com.bfwg.model.UserSummary;
 import com.bfwg.repository.UserRepository;
+import com.bfwg.security.auth.ApiKeyAuthentication;
+import com.bfwg.security.auth.VerifiedCredentialCache;
 import com.bfwg.service.UserService;
 
 /**
@@ -35,10 +39,10 @@ public class UserServiceImpl implements UserService {
 	private PasswordEncoder passwordEncoder;
 
 	@Autowired
-	private AuthenticationManager authenticationManager;
+	private ReadYourWrites readYourWrites;
 
 	@Autowired
-	private UserDetailsService userDetailsService;
+	private VerifiedCredentialCache verifiedCredentialCache;
 
 	@Override
 	public User findByUsername(String username) throws UsernameNotFoundException {
@@ -56,27 +60,62 @@ public class UserServiceImpl implements UserService {
 		return result;
 	}
 
+	public UserSummary findSummaryById(Long id) {
+		return first(UserSummary.aggregate(userRepository.findSummaryRowsById(id)));
+	}
+
+	public UserSummary findSummaryByUsername(String username) {
+		if (username == null) {
+			return null;
+		}
+		// whoami right after a password change should show the new reset date
+		return first(UserSummary.aggregate(readYourWrites.read(username,
+				() -> userRepository.findSummaryRowsByNormalizedUsername(User.normalizeUsername(username)))));
+	}
+
+	public List<UserSummary> findAllSummaries() {
+		return UserSummary.aggregate(userRepository.findAllSummaryRows());
+	}
+
+	private static UserSummary first(List<UserSummary> users) {
+		return users.isEmpty() ? null : users.get(0);
+	}
+
 	public void changePassword(String oldPassword, String newPassword) {
 
 		Authentication currentUser = SecurityContextHolder.getContext().getAuthentication();
+		if (currentUser instanceof ApiKeyAuthentication) {
+			// the key's name may well be some user's name, that user's password is not the key's
+			throw new AccessDeniedException("API keys have no password to change");
+		}
 		String username = currentUser.getName();
 
-		if (authenticationManager != null) {
-			LOGGER.debug("Re-authenticating user '" + username + "' for password change request.");
+		LOGGER.debug("Re-authenticating user '" + username + "' for password change request.");
 
-			authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, oldPassword));
-		} else {
-			LOGGER.debug("No authentication manager set. can't change Password!");
+		// the token filter has already loaded the user, only fall back to the database
+		// when the principal is something else (e.g. a mock user)
+		User user = currentUser.getPrincipal() instanceof User
+				? (User) currentUser.getPrincipal()
+				: ReadYourWrites.onPrimary(() -> userRepository.findByUsername(username));
 
-			return;
+		// a wrong old password costs one bcrypt, never a second one for the new hash
+		if (user == null || !passwordEncoder.matches(oldPassword, user.getPassword())) {
+			throw new BadCredentialsException("Bad credentials");
 		}
 
 		LOGGER.debug("Changing password for user '" + username + "'");
 
-		User user = (User) userDetailsService.loadUserByUsername(username);
+		String encoded = passwordEncoder.encode(newPassword);
 
-		user.setPassword(passwordEncoder.encode(newPassword));
-		userRepository.save(user);
+		Timestamp resetDate = new Timestamp(System.currentTimeMillis());
+		if (userRepository.updatePassword(user.getId(), user.getPassword(), encoded, resetDate) == 0) {
+			throw new ConcurrencyFailureException(
+					"Password of user '" + username + "' was changed by another request.");
+		}
 
+		readYourWrites.recordWrite(username);
+		// the old password must not log in from the cache on this instance
+		verifiedCredentialCache.invalidate(user.getUsername());
+		// the principal is left as loaded, tokens issued before resetDate stop validating on their next lookup
 	}
 }
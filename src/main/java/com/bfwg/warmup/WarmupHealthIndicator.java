@@ -0,0 +1,35 @@
+package com.bfwg.warmup;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * OUT_OF_SERVICE until the warm-up finished, included in the readiness group so
+ * the instance only receives traffic once its hot paths are compiled and primed.
+ */
+@Component("warmup")
+public class WarmupHealthIndicator implements HealthIndicator {
+
+	private volatile Map<String, Object> result;
+
+	void completed(Map<String, Object> details) {
+		this.result = Collections.unmodifiableMap(details);
+	}
+
+	public boolean isCompleted() {
+		return result != null;
+	}
+
+	@Override
+	public Health health() {
+		Map<String, Object> details = result;
+		if (details == null) {
+			return Health.outOfService().build();
+		}
+		return Health.up().withDetails(details).build();
+	}
+}
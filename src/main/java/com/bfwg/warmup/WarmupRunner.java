@@ -0,0 +1,272 @@
+package com.bfwg.warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.mobile.device.Device;
+import org.springframework.mobile.device.DevicePlatform;
+import org.springframework.mobile.device.DeviceType;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import com.bfwg.model.User;
+import com.bfwg.model.UserTokenState;
+import com.bfwg.security.TokenHelper;
+import com.bfwg.service.UserService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Runs the hot paths synthetically before the application reports ready: token
+ * sign/verify, user lookups, BCrypt, Jackson and the connection pool. Each step
+ * runs at least once and stops early once its share of the budget is spent, so
+ * a slow step cannot starve the ones after it; a failing step is logged and
+ * never keeps the instance out of service. Off unless warmup.enabled is set, and
+ * the failed logins it makes name an account that does not exist.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class WarmupRunner implements ApplicationRunner {
+
+	protected final Log LOGGER = LogFactory.getLog(getClass());
+
+	private static final Device[] DEVICES = {
+			new WarmupDevice(DeviceType.NORMAL),
+			new WarmupDevice(DeviceType.MOBILE),
+			new WarmupDevice(DeviceType.TABLET) };
+
+	@Value("${warmup.enabled:false}")
+	private boolean enabled;
+
+	@Value("${warmup.budget:10s}")
+	private Duration budget;
+
+	@Value("${warmup.username:user}")
+	private String username;
+
+	@Value("${warmup.login-username:warmup-no-such-user}")
+	private String loginUsername;
+
+	@Value("${warmup.iterations:5000}")
+	private int iterations;
+
+	@Value("${warmup.lookups:200}")
+	private int lookups;
+
+	@Value("${warmup.password-checks:4}")
+	private int passwordChecks;
+
+	@Value("${warmup.connections:4}")
+	private int connections;
+
+	private final TokenHelper tokenHelper;
+
+	private final UserDetailsService userDetailsService;
+
+	private final UserService userService;
+
+	private final AuthenticationManager authenticationManager;
+
+	private final PasswordEncoder passwordEncoder;
+
+	private final ObjectMapper objectMapper;
+
+	private final DataSource dataSource;
+
+	private final WarmupHealthIndicator healthIndicator;
+
+	public WarmupRunner(TokenHelper tokenHelper, UserDetailsService userDetailsService, UserService userService,
+			AuthenticationManager authenticationManager, PasswordEncoder passwordEncoder, ObjectMapper objectMapper,
+			DataSource dataSource, WarmupHealthIndicator healthIndicator) {
+		this.tokenHelper = tokenHelper;
+		this.userDetailsService = userDetailsService;
+		this.userService = userService;
+		this.authenticationManager = authenticationManager;
+		this.passwordEncoder = passwordEncoder;
+		this.objectMapper = objectMapper;
+		this.dataSource = dataSource;
+		this.healthIndicator = healthIndicator;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		Map<String, Object> details = new LinkedHashMap<>();
+		if (!enabled) {
+			details.put("skipped", true);
+			healthIndicator.completed(details);
+			return;
+		}
+		long started = System.nanoTime();
+		long deadline = started + budget.toNanos();
+
+		step(details, "connections", deadline, 5, connections, this::primePool);
+		step(details, "tokens", deadline, 4, iterations, this::signAndVerify);
+		step(details, "lookups", deadline, 3, lookups, this::lookUp);
+		step(details, "passwords", deadline, 2, passwordChecks, this::checkPassword);
+		step(details, "serialization", deadline, 1, iterations, new Serialization()::serialize);
+
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+		details.put("elapsedMillis", elapsed);
+		LOGGER.info("Warm-up finished in " + elapsed + " ms: " + details);
+		healthIndicator.completed(details);
+	}
+
+	/*
+	 * Records how many iterations ran, or the error that ended the step. The step
+	 * gets an even share of what is left of the budget among the remaining steps,
+	 * time a quick step leaves unused goes to the ones after it.
+	 */
+	private void step(Map<String, Object> details, String name, long deadline, int remainingSteps, int count,
+			LongConsumer action) {
+		int done = 0;
+		long started = System.nanoTime();
+		long stepDeadline = started + Math.max(0, deadline - started) / remainingSteps;
+		try {
+			while (done < count && (done == 0 || System.nanoTime() < stepDeadline)) {
+				action.accept(done);
+				done++;
+			}
+			details.put(name, done);
+			LOGGER.debug("Warm-up step " + name + " took "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+		} catch (RuntimeException e) {
+			LOGGER.warn("Warm-up step " + name + " failed after " + done + " iterations", e);
+			details.put(name, "failed: " + e.getMessage());
+		}
+	}
+
+	private void signAndVerify(long i) {
+		Device device = DEVICES[(int) (i % DEVICES.length)];
+		String token = tokenHelper.generateToken(username, device);
+		tokenHelper.verify(token);
+		tokenHelper.verify(token.substring(0, token.length() - 2) + "xx");
+		tokenHelper.getUsernameFromToken(token);
+	}
+
+	private void lookUp(long i) {
+		UserDetails user = userDetailsService.loadUserByUsername(username);
+		if (user instanceof User) {
+			userService.findSummaryById(((User) user).getId());
+		}
+		try {
+			userDetailsService.loadUserByUsername("warmup-missing-" + i);
+		} catch (UsernameNotFoundException expected) {
+			// exercises the not found path as well
+		}
+	}
+
+	/*
+	 * A fresh hash at the configured cost, then the login path for an unknown
+	 * user, so no real account collects failed attempts.
+	 */
+	private void checkPassword(long i) {
+		passwordEncoder.matches("warmup", passwordEncoder.encode("warmup"));
+		try {
+			authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(loginUsername, "warmup-" + i));
+		} catch (AuthenticationException expected) {
+			// unknown user
+		}
+	}
+
+	/*
+	 * Loads the warm-up account once, the loop itself only exercises Jackson.
+	 */
+	private class Serialization {
+
+		private Object user;
+
+		private Object summary;
+
+		void serialize(long i) {
+			try {
+				if (user == null) {
+					user = userDetailsService.loadUserByUsername(username);
+					summary = userService.findSummaryByUsername(username);
+				}
+				objectMapper.writeValueAsBytes(user);
+				objectMapper.writeValueAsBytes(summary);
+				objectMapper.writeValueAsBytes(new UserTokenState("warmup-" + i, i));
+			} catch (JsonProcessingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/*
+	 * Holds i + 1 connections at the same time, so the pool really opens that
+	 * many by the last iteration.
+	 */
+	private void primePool(long i) {
+		List<Connection> held = new ArrayList<>();
+		try {
+			for (int n = 0; n <= i; n++) {
+				Connection connection = dataSource.getConnection();
+				held.add(connection);
+				connection.isValid(1);
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			for (Connection connection : held) {
+				try {
+					connection.close();
+				} catch (SQLException e) {
+					LOGGER.debug("Could not return warm-up connection", e);
+				}
+			}
+		}
+	}
+	/*
+	 * LiteDevice is not public, so the synthetic requests bring their own.
+	 */
+	private static final class WarmupDevice implements Device {
+
+		private final DeviceType type;
+
+		WarmupDevice(DeviceType type) {
+			this.type = type;
+		}
+
+		@Override
+		public boolean isNormal() {
+			return type == DeviceType.NORMAL;
+		}
+
+		@Override
+		public boolean isMobile() {
+			return type == DeviceType.MOBILE;
+		}
+
+		@Override
+		public boolean isTablet() {
+			return type == DeviceType.TABLET;
+		}
+
+		@Override
+		public DevicePlatform getDevicePlatform() {
+			return DevicePlatform.UNKNOWN;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.bfwg;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Time from starting the application with the startup profile until the first
+ * successful /api/whoami, including the login. Raise the limit with
+ * -Dstartup.max-millis on slow machines.
+ */
+public class StartupTimeTest {
+
+    private static final Log LOGGER = LogFactory.getLog(StartupTimeTest.class);
+
+    private static final long MAX_MILLIS = Long.getLong("startup.max-millis", 20000);
+
+    private static final Pattern ACCESS_TOKEN = Pattern.compile("\"access_token\":\"([^\"]+)\"");
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    public void firstWhoamiWithinBudget() throws Exception {
+        long started = System.nanoTime();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .profiles("startup")
+                .run("--server.port=0")) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            long ready = System.nanoTime();
+
+            String body = "{\"username\":\"user\",\"password\":\"123\"}";
+            HttpResponse<String> login = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/auth/login"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertThat(login.statusCode()).isEqualTo(200);
+            Matcher token = ACCESS_TOKEN.matcher(login.body());
+            assertThat(token.find()).isTrue();
+
+            HttpResponse<String> whoami = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/whoami"))
+                    .header("Authorization", "Bearer " + token.group(1))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertThat(whoami.statusCode()).isEqualTo(200);
+            assertThat(whoami.body()).contains("\"username\":\"user\"");
+
+            long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            LOGGER.info("Startup profile: context ready after " + TimeUnit.NANOSECONDS.toMillis(ready - started)
+                    + " ms, first successful /api/whoami after " + total + " ms");
+            assertThat(total).isLessThan(MAX_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.bfwg;
+
+import com.bfwg.security.DeviceDummy;
+import com.bfwg.security.TokenHelper;
+import com.bfwg.service.impl.CustomUserDetailsService;
+import com.bfwg.service.impl.KnownUsernameFilter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Grows the USERS table step by step and measures username lookup, token
+ * authentication through the filter, login and /api/user/all at every size.
+ * Fails when a lookup slows down faster than logarithmically in the table size.
+ *
+ * Run with {@code mvn -Pperf test -Dtest=UserScaleBenchmark}, optionally with
+ * {@code -Dscale.sizes=10000,100000,1000000,2000000}, {@code -Dscale.samples=2000},
+ * {@code -Dscale.tolerance=4} and {@code -Dscale.allUsersMax=100000}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class UserScaleBenchmark {
+
+    // hash of "123" from import.sql, cheap enough to keep login dominated by the lookup
+    private static final String PASSWORD_HASH = "$2a$04$Vbug2lwwJGrvUXTj6z7ff.97IzVBkrJ1XfApfGNl.Z695zqcnPYra";
+
+    private static final long FIRST_ID = 1_000_000_000L;
+
+    private static final int INSERT_BATCH = 10_000;
+
+    private final long[] sizes = Arrays.stream(System.getProperty("scale.sizes", "10000,100000,1000000,2000000")
+            .split(",")).mapToLong(size -> Long.parseLong(size.trim())).toArray();
+
+    private final int samples = Integer.getInteger("scale.samples", 2000);
+
+    private final double tolerance = Double.parseDouble(System.getProperty("scale.tolerance", "4"));
+
+    private final long allUsersMax = Long.getLong("scale.allUsersMax", 100_000L);
+
+    private final Random random = new Random(42);
+
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
+
+    @Autowired
+    private KnownUsernameFilter knownUsernames;
+
+    @Autowired
+    private TokenHelper tokenHelper;
+
+    @Autowired
+    private DeviceDummy device;
+
+    private long generated;
+
+    @Before
+    public void setup() {
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+        device.setNormal(true);
+    }
+
+    @Test
+    public void lookupsStayLogarithmicAsTheTableGrows() throws Exception {
+        Map<Long, Map<String, Double>> results = new LinkedHashMap<>();
+        for (long size : sizes) {
+            growTo(size);
+            if (results.isEmpty()) {
+                measure(size); // warm up JIT, pool and query plans on the smallest table
+            }
+            results.put(size, measure(size));
+            System.out.println(String.format(Locale.ROOT, "%,12d users, median micros: %s", size, results.get(size)));
+        }
+
+        Map<String, Double> baseline = results.get(sizes[0]);
+        for (Map.Entry<Long, Map<String, Double>> result : results.entrySet()) {
+            double allowed = tolerance * Math.log(result.getKey()) / Math.log(sizes[0]);
+            for (String operation : Arrays.asList("lookup", "filter", "login")) {
+                double ratio = result.getValue().get(operation) / baseline.get(operation);
+                assertThat(ratio)
+                        .as("%s at %,d users is %.1fx slower than at %,d users", operation, result.getKey(), ratio, sizes[0])
+                        .isLessThanOrEqualTo(allowed);
+            }
+        }
+    }
+
+    private void growTo(long size) {
+        long existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM USERS", Long.class);
+        Timestamp resetDate = new Timestamp(0);
+        while (existing < size) {
+            int batch = (int) Math.min(INSERT_BATCH, size - existing);
+            List<Object[]> users = new ArrayList<>(batch);
+            List<Object[]> authorities = new ArrayList<>(batch);
+            for (int i = 0; i < batch; i++) {
+                long id = FIRST_ID + generated++;
+                String username = username(id);
+                users.add(new Object[] { id, username, username.toLowerCase(Locale.ROOT), PASSWORD_HASH, resetDate });
+                authorities.add(new Object[] { id });
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO USERS (id, username, normalized_username, password, enabled, last_password_reset_date) "
+                    + "VALUES (?, ?, ?, ?, true, ?)", users);
+            jdbcTemplate.batchUpdate("INSERT INTO USER_AUTHORITY (user_id, authority_id) VALUES (?, 1)", authorities);
+            existing += batch;
+        }
+        knownUsernames.rebuild();
+    }
+
+    private Map<String, Double> measure(long size) throws Exception {
+        Map<String, Double> medians = new LinkedHashMap<>();
+
+        long[] lookups = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            // upper case to go through the case-insensitive path
+            String username = randomUsername().toUpperCase(Locale.ROOT);
+            long started = System.nanoTime();
+            userDetailsService.loadUserByUsername(username);
+            lookups[i] = System.nanoTime() - started;
+        }
+        medians.put("lookup", median(lookups));
+
+        long[] filter = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            String token = tokenHelper.generateToken(randomUsername(), device);
+            long started = System.nanoTime();
+            mvc.perform(get("/api/whoami").header("Authorization", "Bearer " + token))
+                    .andExpect(status().isOk());
+            filter[i] = System.nanoTime() - started;
+        }
+        medians.put("filter", median(filter));
+
+        long[] login = new long[Math.max(1, samples / 10)];
+        for (int i = 0; i < login.length; i++) {
+            String body = "{\"username\":\"" + randomUsername() + "\",\"password\":\"123\"}";
+            long started = System.nanoTime();
+            mvc.perform(post("/auth/login").contentType(MediaType.APPLICATION_JSON).content(body))
+                    .andExpect(status().isOk());
+            login[i] = System.nanoTime() - started;
+            SecurityContextHolder.clearContext();
+        }
+        medians.put("login", median(login));
+
+        // inherently linear, only recorded for reference
+        if (size <= allUsersMax) {
+            long[] all = new long[3];
+            String token = tokenHelper.generateToken("admin", device);
+            for (int i = 0; i < all.length; i++) {
+                long started = System.nanoTime();
+                mvc.perform(get("/api/user/all").header("Authorization", "Bearer " + token))
+                        .andExpect(status().isOk());
+                all[i] = System.nanoTime() - started;
+            }
+            medians.put("allUsers", median(all));
+        }
+        return medians;
+    }
+
+    private String randomUsername() {
+        return username(FIRST_ID + (long) (random.nextDouble() * generated));
+    }
+
+    private static String username(long id) {
+        return "scale-user-" + id;
+    }
+
+    private static double median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1_000.0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.bfwg.common;
+
+import org.junit.Test;
+import org.springframework.mobile.device.Device;
+import org.springframework.mobile.device.DeviceResolver;
+import org.springframework.mobile.device.LiteDeviceResolver;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingDeviceResolverTest {
+
+    private static final String IPHONE =
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 16_0 like Mac OS X) AppleWebKit/605.1.15 Mobile/15E148";
+    private static final String IPAD =
+            "Mozilla/5.0 (iPad; CPU OS 16_0 like Mac OS X) AppleWebKit/605.1.15 Mobile/15E148";
+    private static final String DESKTOP =
+            "Mozilla/5.0 (X11; Linux x86_64; rv:109.0) Gecko/20100101 Firefox/115.0";
+
+    private final AtomicInteger resolved = new AtomicInteger();
+
+    private final DeviceResolver counting = new DeviceResolver() {
+        private final LiteDeviceResolver lite = new LiteDeviceResolver();
+
+        @Override
+        public Device resolveDevice(javax.servlet.http.HttpServletRequest request) {
+            resolved.incrementAndGet();
+            return lite.resolveDevice(request);
+        }
+    };
+
+    @Test
+    public void resolvesEachUserAgentOnce() {
+        CachingDeviceResolver resolver = new CachingDeviceResolver(counting, 10);
+
+        Device first = resolver.resolveDevice(request(IPHONE));
+        Device second = resolver.resolveDevice(request(IPHONE));
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.isMobile()).isTrue();
+        assertThat(resolver.resolveDevice(request(IPAD)).isTablet()).isTrue();
+        assertThat(resolver.resolveDevice(request(DESKTOP)).isNormal()).isTrue();
+        assertThat(resolved.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void headersBesidesTheUserAgentBypassTheCache() {
+        CachingDeviceResolver resolver = new CachingDeviceResolver(counting, 10);
+        resolver.resolveDevice(request(DESKTOP));
+
+        MockHttpServletRequest wap = request(DESKTOP);
+        wap.addHeader("x-wap-profile", "http://example.com/uaprof.xml");
+
+        assertThat(resolver.resolveDevice(wap).isMobile()).isTrue();
+        assertThat(resolver.resolveDevice(request(DESKTOP)).isNormal()).isTrue();
+        assertThat(resolver.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void fullCacheStillResolves() {
+        CachingDeviceResolver resolver = new CachingDeviceResolver(counting, 1);
+        resolver.resolveDevice(request(DESKTOP));
+
+        assertThat(resolver.resolveDevice(request(IPHONE)).isMobile()).isTrue();
+        assertThat(resolver.resolveDevice(request(IPHONE)).isMobile()).isTrue();
+        assertThat(resolver.size()).isEqualTo(1);
+        assertThat(resolved.get()).isEqualTo(3);
+    }
+
+    private static MockHttpServletRequest request(String userAgent) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("User-Agent", userAgent);
+        return request;
+    }
+}
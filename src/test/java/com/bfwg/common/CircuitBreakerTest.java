@@ -0,0 +1,41 @@
+package com.bfwg.common;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void trialEndingWithoutAnOutcomeFreesTheSlot() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.allowRequest().onFailure();
+
+        CircuitBreaker.Permit trial = breaker.allowRequest();
+        assertThat(trial).isNotNull();
+        assertThat(breaker.allowRequest()).isNull();
+
+        // what the filter's finally block does when the lookup threw an Error
+        trial.release();
+        assertThat(breaker.allowRequest()).isNotNull();
+    }
+
+    @Test
+    public void callsStartedBeforeTheBreakerOpenedDoNotAffectTheTrial() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        CircuitBreaker.Permit slow = breaker.allowRequest();
+        CircuitBreaker.Permit slowSuccess = breaker.allowRequest();
+        breaker.allowRequest().onFailure();
+
+        CircuitBreaker.Permit trial = breaker.allowRequest();
+        assertThat(trial).isNotNull();
+        slow.onFailure();
+        slowSuccess.onSuccess();
+        assertThat(breaker.getState()).isNotEqualTo(CircuitBreaker.State.CLOSED);
+        // the trial is still the only call let through
+        assertThat(breaker.allowRequest()).isNull();
+
+        trial.onSuccess();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+}
@@ -0,0 +1,59 @@
+package com.bfwg.common;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+
+    @Test
+    public void waiterTimesOutWhileTheLoadRuns() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return flight.execute("key", () -> {
+                    loading.countDown();
+                    await(release);
+                    return "value";
+                }, 1, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        loading.await();
+
+        assertThatThrownBy(() -> flight.execute("key", () -> "other", 50, TimeUnit.MILLISECONDS))
+                .isInstanceOf(TimeoutException.class);
+
+        release.countDown();
+        assertThat(leader.get(1, TimeUnit.SECONDS)).isEqualTo("value");
+        assertThat(flight.inFlight()).isZero();
+    }
+
+    @Test
+    public void keyIsReleasedAfterAFailure() throws Exception {
+        assertThatThrownBy(() -> flight.execute("key", () -> {
+            throw new IllegalArgumentException("boom");
+        }, 1, TimeUnit.SECONDS)).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(flight.inFlight()).isZero();
+        assertThat(flight.execute("key", () -> "value", 1, TimeUnit.SECONDS)).isEqualTo("value");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
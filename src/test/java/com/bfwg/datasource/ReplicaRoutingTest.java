@@ -0,0 +1,107 @@
+package com.bfwg.datasource;
+
+import com.bfwg.model.User;
+import com.bfwg.repository.UserRepository;
+import com.bfwg.service.UserService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Primary and replica are two in-memory H2 databases. The replica is a copy of
+ * the primary taken before each test, with a marker first name on every user,
+ * so it is visible where a read was served.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaRoutingTest.PRIMARY_URL,
+        "app.datasource.replicas[0].url=" + ReplicaRoutingTest.REPLICA_URL,
+        "warmup.enabled=false"
+})
+public class ReplicaRoutingTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1";
+
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+    private static final String ORIGINAL_HASH = "$2a$04$Vbug2lwwJGrvUXTj6z7ff.97IzVBkrJ1XfApfGNl.Z695zqcnPYra";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void copyPrimaryToReplica() throws Exception {
+        File script = File.createTempFile("primary-", ".sql");
+        try (Connection primary = DriverManager.getConnection(PRIMARY_URL, "sa", "");
+             Connection replica = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement fromPrimary = primary.createStatement();
+             Statement toReplica = replica.createStatement()) {
+            fromPrimary.execute("SCRIPT TO '" + script.getAbsolutePath() + "'");
+            toReplica.execute("DROP ALL OBJECTS");
+            toReplica.execute("RUNSCRIPT FROM '" + script.getAbsolutePath() + "'");
+            toReplica.executeUpdate("UPDATE USERS SET first_name = 'Replica'");
+        } finally {
+            script.delete();
+        }
+    }
+
+    @After
+    public void restore() {
+        SecurityContextHolder.clearContext();
+        jdbcTemplate.update("UPDATE USERS SET password = ? WHERE username = 'user'", ORIGINAL_HASH);
+    }
+
+    @Test
+    public void readOnlyTransactionsUseTheReplica() {
+        assertThat(userRepository.findByUsername("admin").getFirstName()).isEqualTo("Replica");
+        assertThat(userService.findSummaryById(2L).getFirstName()).isEqualTo("Replica");
+        assertThat(ReadYourWrites.onPrimary(() -> userRepository.findByUsername("admin").getFirstName()))
+                .isNotEqualTo("Replica");
+        // no transaction, e.g. the username filter, goes to the primary
+        assertThat(jdbcTemplate.queryForObject("SELECT first_name FROM USERS WHERE username = 'admin'", String.class))
+                .isNotEqualTo("Replica");
+    }
+
+    @Test
+    public void passwordChangeReadsItsOwnWrite() {
+        User user = ReadYourWrites.onPrimary(() -> userRepository.findByUsername("user"));
+        Timestamp before = user.getLastPasswordResetDate();
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+
+        userService.changePassword("123", "replicated-later");
+
+        // the replica still has the old row, the user's own reads must not see it
+        User loaded = (User) userDetailsService.loadUserByUsername("user");
+        assertThat(loaded.getFirstName()).isNotEqualTo("Replica");
+        assertThat(loaded.getLastPasswordResetDate()).isAfter(before);
+        assertThat(userService.findSummaryByUsername("user").getFirstName()).isNotEqualTo("Replica");
+        // other users are still read from the replica
+        assertThat(((User) userDetailsService.loadUserByUsername("admin")).getFirstName()).isEqualTo("Replica");
+    }
+}
@@ -0,0 +1,144 @@
+package com.bfwg.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void rejectsOverTheLimitUntilASlotIsReleased() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 1.5, 10);
+
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+        limit.release(FAST);
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.getInFlight()).isEqualTo(2);
+    }
+
+    @Test
+    public void growsWhileSaturatedAtSteadyLatency() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 100, 1.5, 10);
+
+        saturate(limit, FAST, 10);
+
+        assertThat(limit.getLimit()).isGreaterThan(10);
+    }
+
+    @Test
+    public void shrinksWhenLatencyRises() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 2, 100, 1.5, 10);
+        saturate(limit, FAST, 10);
+        int before = limit.getLimit();
+
+        // the first windows after the slowdown, before the long-term latency follows
+        saturate(limit, SLOW, 2);
+
+        assertThat(limit.getLimit()).isLessThan(before).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    public void oneSlowOutlierDoesNotShrinkTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 2, 100, 1.5, 10);
+        saturate(limit, FAST, 10);
+        int before = limit.getLimit();
+
+        // one streaming import among fast requests
+        int acquired = 0;
+        while (limit.tryAcquire()) {
+            acquired++;
+        }
+        limit.release(TimeUnit.MINUTES.toNanos(2));
+        for (int i = 1; i < acquired; i++) {
+            limit.release(FAST);
+        }
+        saturate(limit, FAST, 1);
+
+        assertThat(limit.getLimit()).isGreaterThanOrEqualTo(before);
+    }
+
+    @Test
+    public void unsampledPathsHoldASlotWithoutASample() throws Exception {
+        AdaptiveConcurrencyLimit api = new AdaptiveConcurrencyLimit(1, 1, 1, 1.5, 1);
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(new AdaptiveConcurrencyLimit(1, 1, 1, 1.5, 1),
+                api, Collections.singleton("/api/admin/users/import"), new SimpleMeterRegistry());
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/admin/users/import");
+        request.setServletPath("/api/admin/users/import");
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            assertThat(api.getInFlight()).isEqualTo(1);
+            assertThat(api.tryAcquire()).isFalse();
+        });
+        assertThat(api.getInFlight()).isZero();
+    }
+
+    @Test
+    public void idleLimitStaysPut() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 100, 1.5, 10);
+
+        for (int i = 0; i < 200; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+            limit.release(i < 100 ? FAST : SLOW);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    public void filterAnswersExcessWith503() throws Exception {
+        AdaptiveConcurrencyLimit api = new AdaptiveConcurrencyLimit(1, 1, 1, 1.5, 10);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(
+                new AdaptiveConcurrencyLimit(1, 1, 1, 1.5, 10), api, registry);
+        assertThat(api.tryAcquire()).isTrue();
+
+        MockHttpServletResponse rejected = filter(filter, "/api/whoami");
+        assertThat(rejected.getStatus()).isEqualTo(503);
+        assertThat(rejected.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(rejected.getContentAsString()).contains("\"error\":\"overloaded\"");
+        // separate limits, and other paths are not limited
+        assertThat(filter(filter, "/auth/login").getStatus()).isEqualTo(200);
+        assertThat(filter(filter, "/index.html").getStatus()).isEqualTo(200);
+
+        api.release(FAST);
+        assertThat(filter(filter, "/api/whoami").getStatus()).isEqualTo(200);
+        assertThat(api.getInFlight()).isZero();
+        assertThat(registry.get("http.server.concurrency.rejected").tag("group", "api").counter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("http.server.concurrency.limit").tag("group", "api").gauge().value())
+                .isEqualTo(1);
+    }
+
+    // rounds of filling every slot and then releasing them all
+    private static void saturate(AdaptiveConcurrencyLimit limit, long rttNanos, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (limit.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limit.release(rttNanos);
+            }
+        }
+    }
+
+    private static MockHttpServletResponse filter(ConcurrencyLimitFilter filter, String path) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -0,0 +1,142 @@
+package com.bfwg.rest;
+
+import com.bfwg.model.UserRoleName;
+import com.bfwg.service.impl.ApiKeyServiceImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "app.api-keys.pepper=test-pepper")
+public class ApiKeyControllerTest {
+
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Before
+    public void setup() {
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+    }
+
+    @Test
+    public void keyAuthenticatesWithItsRolesUntilRevoked() throws Exception {
+        String[] created = create("reporting-job", "[\"ROLE_USER\",\"ROLE_ADMIN\"]");
+        String id = created[0];
+        String key = created[1];
+
+        mvc.perform(get("/api/user/all").header("Authorization", "Bearer " + key))
+                .andExpect(status().isOk());
+        // the listing never shows the key or its digest
+        mvc.perform(get("/api/admin/api-keys").with(user("admin").roles("ADMIN")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"name\":\"reporting-job\"")))
+                .andExpect(content().string(not(containsString(key))))
+                .andExpect(content().string(not(containsString("digest"))));
+
+        mvc.perform(delete("/api/admin/api-keys/" + id).with(user("admin").roles("ADMIN")))
+                .andExpect(status().isNoContent());
+        mvc.perform(get("/api/user/all").header("Authorization", "Bearer " + key))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(delete("/api/admin/api-keys/" + id).with(user("admin").roles("ADMIN")))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void keyIsLimitedToItsRoles() throws Exception {
+        String key = create("metrics-scraper", "[\"ROLE_USER\"]")[1];
+
+        mvc.perform(get("/api/user/all").header("Authorization", "Bearer " + key))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void keyIsNeverTakenForTheUserOfTheSameName() throws Exception {
+        String key = create("user", "[\"ROLE_USER\"]")[1];
+
+        mvc.perform(get("/api/whoami").header("Authorization", "Bearer " + key))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{username:\"user\",authorities:[{authority:\"ROLE_USER\"}]}"))
+                .andExpect(content().string(not(containsString("email"))));
+        mvc.perform(post("/auth/refresh").header("Authorization", "Bearer " + key))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("API keys cannot be refreshed")));
+        mvc.perform(post("/auth/change-password").header("Authorization", "Bearer " + key)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"oldPassword\":\"123\",\"newPassword\":\"456\"}"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void wrongSecretIsRejected() throws Exception {
+        String key = create("backup-job", "[\"ROLE_ADMIN\"]")[1];
+        String tampered = key.substring(0, key.length() - 1) + (key.endsWith("A") ? "B" : "A");
+
+        mvc.perform(get("/api/user/all").header("Authorization", "Bearer " + tampered))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    public void onlyAdminsManageKeys() throws Exception {
+        mvc.perform(post("/api/admin/api-keys")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"job\",\"roles\":[\"ROLE_ADMIN\"]}"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void keysAreDisabledWithoutAPepper() {
+        ApiKeyServiceImpl service = new ApiKeyServiceImpl(null, "", Duration.ofHours(1));
+        ApiKeyController.ApiKeyRequest request = new ApiKeyController.ApiKeyRequest();
+        request.setName("job");
+        request.setRoles(EnumSet.of(UserRoleName.ROLE_USER));
+
+        assertThat(new ApiKeyController(service).create(request).getStatusCode())
+                .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(service.authenticate("bfwg_abcdefgh_" + String.join("", Collections.nCopies(43, "A")))).isNull();
+    }
+
+    private String[] create(String name, String roles) throws Exception {
+        String body = mvc.perform(post("/api/admin/api-keys").with(user("admin").roles("ADMIN"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"" + name + "\",\"roles\":" + roles + "}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        Matcher id = Pattern.compile("\"id\":(\\d+)").matcher(body);
+        Matcher key = Pattern.compile("\"key\":\"(bfwg_[^\"]+)\"").matcher(body);
+        assertThat(id.find()).isTrue();
+        assertThat(key.find()).isTrue();
+        return new String[] {id.group(1), key.group(1)};
+    }
+}
@@ -0,0 +1,90 @@
+package com.bfwg.rest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class BatchControllerTest {
+
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Before
+    public void setup() {
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+    }
+
+    @Test
+    public void adminReadsEverythingInOneRequest() throws Exception {
+        mvc.perform(post("/api/batch").with(user("admin").roles("USER", "ADMIN"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\":\"me\",\"path\":\"/api/whoami\"},"
+                        + "{\"id\":\"all\",\"path\":\"/api/user/all\"},"
+                        + "{\"id\":\"one\",\"path\":\"/api/user/1\"},"
+                        + "{\"id\":\"bad\",\"path\":\"/api/user/abc\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(4)))
+                .andExpect(jsonPath("$[0].id").value("me"))
+                .andExpect(jsonPath("$[0].status").value(200))
+                .andExpect(jsonPath("$[0].body.username").value("admin"))
+                .andExpect(jsonPath("$[1].status").value(200))
+                .andExpect(jsonPath("$[1].body[0].username").exists())
+                .andExpect(jsonPath("$[2].status").value(200))
+                .andExpect(jsonPath("$[2].body.id").value(1))
+                .andExpect(jsonPath("$[3].status").value(400));
+    }
+
+    @Test
+    public void eachSubRequestKeepsItsRoleCheck() throws Exception {
+        mvc.perform(post("/api/batch").with(user("user").roles("USER"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"path\":\"/api/whoami\"},{\"path\":\"/api/user/all\"},"
+                        + "{\"path\":\"/api/nowhere\"},{\"method\":\"DELETE\",\"path\":\"/api/whoami\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value(200))
+                .andExpect(jsonPath("$[1].status").value(403))
+                .andExpect(jsonPath("$[2].status").value(404))
+                .andExpect(jsonPath("$[3].status").value(405));
+    }
+
+    @Test
+    public void tooManySubRequestsAreRejected() throws Exception {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 11; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"path\":\"/api/whoami\"}");
+        }
+        mvc.perform(post("/api/batch").with(user("user").roles("USER"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body.append("]").toString()))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void batchNeedsAuthentication() throws Exception {
+        mvc.perform(post("/api/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"path\":\"/api/whoami\"}]"))
+                .andExpect(status().isUnauthorized());
+    }
+}
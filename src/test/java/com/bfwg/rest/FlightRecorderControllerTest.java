@@ -0,0 +1,105 @@
+package com.bfwg.rest;
+
+import com.bfwg.security.DeviceDummy;
+import com.bfwg.security.TokenHelper;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class FlightRecorderControllerTest {
+
+    private static final RequestPostProcessor ADMIN = user("admin").roles("ADMIN");
+
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private TokenHelper tokenHelper;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Before
+    public void setup() {
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+    }
+
+    @After
+    public void stopRecording() throws Exception {
+        mvc.perform(post("/api/admin/jfr/stop").with(ADMIN));
+    }
+
+    @Test
+    public void recordsApplicationEvents() throws Exception {
+        mvc.perform(post("/api/admin/jfr/start").with(ADMIN)).andExpect(status().isOk());
+        mvc.perform(post("/api/admin/jfr/start").with(ADMIN)).andExpect(status().isConflict());
+
+        DeviceDummy device = new DeviceDummy();
+        device.setNormal(true);
+        String token = tokenHelper.generateToken("user", device);
+        mvc.perform(get("/api/whoami").header("Authorization", "Bearer " + token)).andExpect(status().isOk());
+        mvc.perform(get("/api/whoami").header("Authorization", "Bearer junk")).andExpect(status().isUnauthorized());
+        passwordEncoder.matches("123", passwordEncoder.encode("123"));
+
+        mvc.perform(post("/api/admin/jfr/stop").with(ADMIN)).andExpect(status().isOk());
+        byte[] recording = mvc.perform(get("/api/admin/jfr/dump").with(ADMIN))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        Path file = Files.createTempFile("recording-test-", ".jfr");
+        try {
+            Files.write(file, recording);
+            Map<String, List<RecordedEvent>> events = RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().startsWith("com.bfwg."))
+                    .collect(Collectors.groupingBy(e -> e.getEventType().getName()));
+
+            assertThat(events.keySet()).containsExactlyInAnyOrder("com.bfwg.TokenSign", "com.bfwg.TokenVerify",
+                    "com.bfwg.TokenFilter", "com.bfwg.UserLookup", "com.bfwg.PasswordHash");
+            assertThat(events.get("com.bfwg.TokenFilter")).extracting(e -> e.getString("outcome"))
+                    .contains("AUTHENTICATED", "MALFORMED");
+            assertThat(events.get("com.bfwg.UserLookup")).extracting(e -> e.getBoolean("found"))
+                    .containsOnly(true);
+            assertThat(events.get("com.bfwg.PasswordHash")).extracting(e -> e.getString("operation"))
+                    .contains("encode", "matches");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void requiresAdmin() throws Exception {
+        mvc.perform(post("/api/admin/jfr/start").with(user("user").roles("USER")))
+                .andExpect(status().isForbidden());
+    }
+}
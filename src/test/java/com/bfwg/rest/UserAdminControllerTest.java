@@ -0,0 +1,111 @@
+package com.bfwg.rest;
+
+import com.bfwg.model.User;
+import com.bfwg.model.UserRoleName;
+import com.bfwg.repository.UserRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class UserAdminControllerTest {
+
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Before
+    public void setup() {
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void importsUsersFromJson() throws Exception {
+        String body = "[{\"username\":\"json-import-1\",\"password\":\"secret1\",\"firstName\":\"Ada\"}," +
+                "{\"username\":\"json-import-2\",\"password\":\"secret2\",\"roles\":[\"ROLE_USER\",\"ROLE_ADMIN\"]}]";
+
+        this.mvc.perform(post("/api/admin/users/import")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"imported\":2,\"done\":true")));
+
+        User first = userRepository.findByUsername("json-import-1");
+        assertThat(first.getFirstName()).isEqualTo("Ada");
+        assertThat(passwordEncoder.matches("secret1", first.getPassword())).isTrue();
+        assertThat(first.getAuthorities()).extracting("authority").containsExactly(UserRoleName.ROLE_USER.name());
+        assertThat(userRepository.findByUsername("json-import-2").getAuthorities()).hasSize(2);
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void importsUsersFromCsv() throws Exception {
+        String body = "username,password,email,roles\n" +
+                "csv-import-1,secret1,one@example.com,ROLE_USER\n" +
+                "csv-import-2,\"sec,ret\",two@example.com,ROLE_USER|ROLE_ADMIN\n";
+
+        this.mvc.perform(post("/api/admin/users/import")
+                .contentType("text/csv")
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"imported\":2,\"done\":true")));
+
+        User second = userRepository.findByUsername("csv-import-2");
+        assertThat(passwordEncoder.matches("sec,ret", second.getPassword())).isTrue();
+        assertThat(second.getEmail()).isEqualTo("two@example.com");
+        assertThat(second.getId()).isGreaterThan(2L);
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    public void importRequiresAdminRole() throws Exception {
+        this.mvc.perform(post("/api/admin/users/import")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().is4xxClientError());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void unreadableBodyIsRejectedBeforeStreaming() throws Exception {
+        this.mvc.perform(post("/api/admin/users/import")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"not-an-array\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().json("{status:400,error:\"bad_request\",message:\"Expected a JSON array of users.\"}"));
+
+        this.mvc.perform(post("/api/admin/users/import")
+                .contentType("text/csv")
+                .content(""))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().json("{status:400,message:\"Missing CSV header line.\"}"));
+    }
+}
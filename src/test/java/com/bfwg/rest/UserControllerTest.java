@@ -5,6 +5,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.test.context.support.WithAnonymousUser;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -12,8 +15,20 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import com.bfwg.repository.UserRepository;
+import com.bfwg.security.DeviceDummy;
+import com.bfwg.security.TokenHelper;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -28,6 +43,12 @@ public class UserControllerTest {
     @Autowired
     private WebApplicationContext context;
 
+    @Autowired
+    private TokenHelper tokenHelper;
+
+    @SpyBean
+    private UserRepository userRepository;
+
     @Before
     public void setup() {
         mvc = MockMvcBuilders
@@ -71,5 +92,56 @@ public class UserControllerTest {
         this.mvc.perform(get("/api/user/all"))
                 .andExpect(status().is4xxClientError());
     }
-}
 
+    @Test
+    @WithAnonymousUser
+    public void unauthorizedResponseIsWrittenDirectly() throws Exception {
+        this.mvc.perform(get("/api/whoami"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().string("WWW-Authenticate", "Bearer"))
+                .andExpect(status().reason(nullValue())) // no sendError, so no /error dispatch
+                .andExpect(content().json("{status:401,error:\"unauthorized\"}"));
+    }
+
+    @Test
+    public void rejectedTokenReasonIsReported() throws Exception {
+        this.mvc.perform(get("/api/whoami").header("Authorization", "Bearer garbage"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(content().json("{status:401,error:\"invalid_token\",message:\"The access token is malformed\"}"));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    public void forbiddenResponseIsWrittenDirectly() throws Exception {
+        this.mvc.perform(get("/api/user/all"))
+                .andExpect(status().isForbidden())
+                .andExpect(content().json("{status:403,error:\"forbidden\",message:\"Access is denied\"}"));
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void userIsReadAsProjection() throws Exception {
+        this.mvc.perform(get("/api/user/2"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{id:2,username:\"admin\",firstName:\"Jing\",lastName:\"Xiao\"," +
+                        "email:\"admin@example.com\",phoneNumber:\"+0987654321\",enabled:true," +
+                        "authorities:[{authority:\"ROLE_USER\"},{authority:\"ROLE_ADMIN\"}]}"))
+                .andExpect(content().string(not(containsString("password"))));
+    }
+
+    @Test
+    public void whoamiIsAnsweredFromClaimsWhileTheStoreIsDown() throws Exception {
+        DeviceDummy device = new DeviceDummy();
+        device.setNormal(true);
+        String token = tokenHelper.generateToken("user", AuthorityUtils.createAuthorityList("ROLE_USER"), device);
+        doThrow(new DataAccessResourceFailureException("connection refused"))
+                .when(userRepository).findByUsername(anyString());
+        doThrow(new DataAccessResourceFailureException("connection refused"))
+                .when(userRepository).findSummaryRowsByNormalizedUsername(anyString());
+
+        this.mvc.perform(get("/api/whoami").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{username:\"user\",authorities:[{authority:\"ROLE_USER\"}]}"))
+                .andExpect(jsonPath("$.issuedAt").exists());
+    }
+}
@@ -0,0 +1,58 @@
+package com.bfwg.security;
+
+import com.bfwg.security.PathAccessMatcher.Access;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Ant pattern lists WebSecurityConfig used before {@link PathAccessMatcher},
+ * evaluated one after the other like the filter chain did.
+ */
+class AntPathRules {
+
+    private static final String[] STATIC = {
+            "/", "/webjars/**", "/*.html", "/favicon.ico", "/**/*.html", "/**/*.css", "/**/*.js"};
+
+    private final RequestMatcher ignored = new OrRequestMatcher(
+            new OrRequestMatcher(matchers(HttpMethod.POST, "/auth/login")),
+            new OrRequestMatcher(matchers(HttpMethod.GET, concat(STATIC, "/.well-known/jwks.json"))));
+
+    private final RequestMatcher health = new OrRequestMatcher(
+            matchers(HttpMethod.GET, "/actuator/health", "/actuator/health/**"));
+
+    private final RequestMatcher permitted = new OrRequestMatcher(
+            new OrRequestMatcher(matchers(HttpMethod.GET, concat(STATIC, "/auth/**"))),
+            new AntPathRequestMatcher("/auth/**"));
+
+    Access decide(HttpServletRequest request) {
+        if (ignored.matches(request)) {
+            return Access.IGNORE;
+        }
+        if (permitted.matches(request)) {
+            return Access.PERMIT;
+        }
+        // the token filter used to run for health checks as well
+        return health.matches(request) ? Access.ANONYMOUS : Access.AUTHENTICATE;
+    }
+
+    private static List<RequestMatcher> matchers(HttpMethod method, String... patterns) {
+        List<RequestMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            matchers.add(new AntPathRequestMatcher(pattern, method.name()));
+        }
+        return matchers;
+    }
+
+    private static String[] concat(String[] patterns, String extra) {
+        String[] all = new String[patterns.length + 1];
+        System.arraycopy(patterns, 0, all, 0, patterns.length);
+        all[patterns.length] = extra;
+        return all;
+    }
+}
@@ -0,0 +1,202 @@
+package com.bfwg.security;
+
+import com.bfwg.common.TimeProvider;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsymmetricJwtKeysTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Test
+    public void es256TokensVerifyHereAndWithThePublishedKey() throws Exception {
+        assertRoundTrip("ES256");
+    }
+
+    @Test
+    public void eddsaTokensVerifyHereAndWithThePublishedKey() throws Exception {
+        assertRoundTrip("EdDSA");
+    }
+
+    @Test
+    public void expiredAsymmetricTokenIsRejected() throws Exception {
+        AsymmetricJwtKeys keys = new AsymmetricJwtKeys("ES256", "", "");
+        TimeProvider past = new TimeProvider() {
+            @Override
+            public Date now() {
+                return new Date(System.currentTimeMillis() - 3_600_000);
+            }
+        };
+        TokenHelper tokenHelper = tokenHelper(keys, past);
+        assertThat(tokenHelper.verify(tokenHelper.generateToken("user", device())).getStatus())
+                .isEqualTo(TokenStatus.EXPIRED);
+    }
+
+    @Test
+    public void hs512TokensAreRejectedAfterSwitching() throws Exception {
+        TokenHelper hs512 = tokenHelper(new AsymmetricJwtKeys("HS512", "", ""), new TimeProvider());
+        String before = hs512.generateToken("user", device());
+
+        TokenHelper switched = tokenHelper(new AsymmetricJwtKeys("EdDSA", "", ""), new TimeProvider());
+        assertThat(switched.verify(before).getStatus()).isEqualTo(TokenStatus.UNSUPPORTED_ALGORITHM);
+
+        switched.setHs512AcceptedUntil(Instant.now().minusSeconds(60).toString());
+        assertThat(switched.verify(before).getStatus()).isEqualTo(TokenStatus.UNSUPPORTED_ALGORITHM);
+    }
+
+    @Test
+    public void hs512TokensVerifyDuringTheMigrationWindow() throws Exception {
+        TokenHelper hs512 = tokenHelper(new AsymmetricJwtKeys("HS512", "", ""), new TimeProvider());
+        String before = hs512.generateToken("user", device());
+
+        TokenHelper switched = tokenHelper(new AsymmetricJwtKeys("EdDSA", "", ""), new TimeProvider());
+        switched.setHs512AcceptedUntil(Instant.now().plusSeconds(3600).toString());
+        assertThat(switched.verify(before).isValid()).isTrue();
+        assertThat(header(switched.refreshToken(before, device())).get("alg").asText()).isEqualTo("EdDSA");
+    }
+
+    @Test
+    public void tokenOfAnotherKeyIsRejected() throws Exception {
+        String foreign = tokenHelper(new AsymmetricJwtKeys("ES256", "", ""), new TimeProvider())
+                .generateToken("user", device());
+        TokenHelper tokenHelper = tokenHelper(new AsymmetricJwtKeys("ES256", "", ""), new TimeProvider());
+        assertThat(tokenHelper.verify(foreign).getStatus()).isEqualTo(TokenStatus.UNKNOWN_KEY);
+    }
+
+    @Test
+    public void publishedKeysVerifyAcrossARotation() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("Ed25519");
+        KeyPair previous = generator.generateKeyPair();
+        KeyPair next = generator.generateKeyPair();
+        AsymmetricJwtKeys before = new AsymmetricJwtKeys("EdDSA", encode(previous.getPrivate()),
+                encode(previous.getPublic()), Collections.singletonList(encode(next.getPublic())));
+        String oldToken = tokenHelper(before, new TimeProvider()).generateToken("user", device());
+
+        AsymmetricJwtKeys after = new AsymmetricJwtKeys("EdDSA", encode(next.getPrivate()),
+                encode(next.getPublic()), Collections.singletonList(encode(previous.getPublic())));
+        TokenHelper tokenHelper = tokenHelper(after, new TimeProvider());
+        assertThat(after.isEphemeral()).isFalse();
+        assertThat(tokenHelper.verify(oldToken).isValid()).isTrue();
+        assertThat(header(tokenHelper.generateToken("user", device())).get("kid").asText()).isEqualTo(after.getKid());
+
+        // both documents list both keys, the active one first
+        JsonNode keys = OBJECT_MAPPER.readTree(after.getJwks()).get("keys");
+        assertThat(keys).hasSize(2);
+        assertThat(keys.get(0).get("kid").asText()).isEqualTo(after.getKid());
+        assertThat(keys.get(1).get("kid").asText()).isEqualTo(before.getKid());
+        assertThat(OBJECT_MAPPER.readTree(before.getJwks()).get("keys")).hasSize(2);
+    }
+
+    @Test
+    public void hs512PublishesNoKeys() throws Exception {
+        AsymmetricJwtKeys keys = new AsymmetricJwtKeys("HS512", "", "");
+        assertThat(keys.isActive()).isFalse();
+        assertThat(new String(keys.getJwks(), StandardCharsets.US_ASCII)).isEqualTo("{\"keys\":[]}");
+    }
+
+    private void assertRoundTrip(String algorithm) throws Exception {
+        AsymmetricJwtKeys keys = new AsymmetricJwtKeys(algorithm, "", "");
+        TokenHelper tokenHelper = tokenHelper(keys, new TimeProvider());
+
+        String token = tokenHelper.generateToken("user", device());
+        TokenVerification verification = tokenHelper.verify(token);
+        assertThat(verification.isValid()).isTrue();
+        assertThat(verification.getClaims().getSubject()).isEqualTo("user");
+        assertThat(header(token).get("kid").asText()).isEqualTo(keys.getKid());
+
+        String tampered = token.substring(0, token.lastIndexOf('.') + 1)
+                + (token.charAt(token.lastIndexOf('.') + 1) == 'A' ? 'B' : 'A')
+                + token.substring(token.lastIndexOf('.') + 2);
+        assertThat(tokenHelper.verify(tampered).getStatus()).isEqualTo(TokenStatus.INVALID_SIGNATURE);
+
+        // a downstream service only has the JWKS document
+        JsonNode jwk = OBJECT_MAPPER.readTree(keys.getJwks()).get("keys").get(0);
+        assertThat(jwk.get("kid").asText()).isEqualTo(keys.getKid());
+        assertThat(verifyWithJwk(jwk, token)).isTrue();
+        assertThat(verifyWithJwk(jwk, tampered)).isFalse();
+    }
+
+    private static boolean verifyWithJwk(JsonNode jwk, String token) throws Exception {
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        PublicKey publicKey;
+        Signature signature;
+        if ("EC".equals(jwk.get("kty").asText())) {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec("secp256r1"));
+            ECPoint point = new ECPoint(new BigInteger(1, decoder.decode(jwk.get("x").asText())),
+                    new BigInteger(1, decoder.decode(jwk.get("y").asText())));
+            publicKey = KeyFactory.getInstance("EC").generatePublic(
+                    new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+            signature = Signature.getInstance("SHA256withECDSAinP1363Format");
+        } else {
+            byte[] prefix = {0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00};
+            byte[] raw = decoder.decode(jwk.get("x").asText());
+            byte[] encoded = new byte[prefix.length + raw.length];
+            System.arraycopy(prefix, 0, encoded, 0, prefix.length);
+            System.arraycopy(raw, 0, encoded, prefix.length, raw.length);
+            publicKey = KeyFactory.getInstance("Ed25519").generatePublic(new X509EncodedKeySpec(encoded));
+            signature = Signature.getInstance("Ed25519");
+        }
+        int signatureStart = token.lastIndexOf('.');
+        signature.initVerify(publicKey);
+        signature.update(token.substring(0, signatureStart).getBytes(StandardCharsets.US_ASCII));
+        try {
+            return signature.verify(decoder.decode(token.substring(signatureStart + 1)));
+        } catch (SignatureException e) {
+            // Ed25519 throws for a signature that does not even decode to a point
+            return false;
+        }
+    }
+
+    private static TokenHelper tokenHelper(AsymmetricJwtKeys keys, TimeProvider timeProvider) {
+        TokenHelper tokenHelper = new TokenHelper();
+        ReflectionTestUtils.setField(tokenHelper, "timeProvider", timeProvider);
+        ReflectionTestUtils.setField(tokenHelper, "EXPIRES_IN", 60);
+        ReflectionTestUtils.setField(tokenHelper, "SECRET", "mySecret");
+        ReflectionTestUtils.setField(tokenHelper, "asymmetricKeys", keys);
+        return tokenHelper;
+    }
+
+    private static String encode(Key key) {
+        return Base64.getEncoder().encodeToString(key.getEncoded());
+    }
+
+    private static DeviceDummy device() {
+        DeviceDummy device = new DeviceDummy();
+        device.setNormal(true);
+        return device;
+    }
+
+    private static JsonNode header(String token) {
+        try {
+            return OBJECT_MAPPER.readTree(Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.'))));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
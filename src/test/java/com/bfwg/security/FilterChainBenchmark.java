@@ -0,0 +1,95 @@
+package com.bfwg.security;
+
+import com.bfwg.Application;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.FilterChainProxy;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Requests per second through the security filter chain alone (the servlet is a no-op),
+ * for the default chain and for app.security.minimal-chain.
+ *
+ * Run with {@code mvn -Pperf test -Dtest=FilterChainBenchmark}.
+ */
+public class FilterChainBenchmark {
+
+    private static final long DURATION_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("chain.seconds", 3));
+
+    @Test
+    public void compareChains() throws Exception {
+        // both contexts stay up and are measured in turns, so JIT warm-up does not favour either
+        try (ConfigurableApplicationContext standard = start(false);
+             ConfigurableApplicationContext minimal = start(true)) {
+            FilterChainProxy[] chains = {chain(standard), chain(minimal)};
+            String[] names = {"default", "minimal"};
+            DeviceDummy device = new DeviceDummy();
+            device.setNormal(true);
+            String bearer = "Bearer " + standard.getBean(TokenHelper.class).generateToken("user", device);
+
+            for (FilterChainProxy chain : chains) {
+                assertThat(status(chain, bearer)).isEqualTo(200);
+                assertThat(status(chain, null)).isEqualTo(401);
+            }
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < chains.length; i++) {
+                    double authenticated = opsPerSecond(chains[i], bearer);
+                    double anonymous = opsPerSecond(chains[i], null);
+                    // the first round is warm-up
+                    if (round > 0) {
+                        System.out.println(String.format(Locale.ROOT,
+                                "%-8s token %,10.0f req/s   no token (401) %,10.0f req/s",
+                                names[i], authenticated, anonymous));
+                    }
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(boolean minimal) {
+        return new SpringApplicationBuilder(Application.class)
+                .run("--app.security.minimal-chain=" + minimal, "--warmup.enabled=false", "--server.port=0");
+    }
+
+    private static FilterChainProxy chain(ConfigurableApplicationContext context) {
+        return context.getBean(FilterChainProxy.class);
+    }
+
+    private static int status(FilterChainProxy chain, String authorization) throws IOException, ServletException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        chain.doFilter(request(authorization), response, new MockFilterChain());
+        return response.getStatus();
+    }
+
+    private static double opsPerSecond(FilterChainProxy chain, String authorization)
+            throws IOException, ServletException {
+        long operations = 0;
+        long started = System.nanoTime();
+        while (System.nanoTime() - started < DURATION_NANOS) {
+            for (int i = 0; i < 100; i++) {
+                chain.doFilter(request(authorization), new MockHttpServletResponse(), new MockFilterChain());
+            }
+            operations += 100;
+        }
+        return operations / ((System.nanoTime() - started) / 1e9);
+    }
+
+    private static MockHttpServletRequest request(String authorization) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/whoami");
+        request.setPathInfo("/api/whoami");
+        if (authorization != null) {
+            request.addHeader("Authorization", authorization);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,139 @@
+package com.bfwg.security;
+
+import com.bfwg.common.TimeProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JwtKeyRingTest {
+
+    private static final String FIRST = Base64.getEncoder().encodeToString(
+            "first-secret-of-at-least-sixty-four-bytes-for-hs512-0123456789ab".getBytes(StandardCharsets.US_ASCII));
+    private static final String SECOND = Base64.getEncoder().encodeToString(
+            "second-secret-of-at-least-sixty-four-bytes-for-hs512-0123456789a".getBytes(StandardCharsets.US_ASCII));
+
+    private Path file;
+
+    private JwtKeyRing keyRing;
+
+    private TokenHelper tokenHelper;
+
+    private DeviceDummy device;
+
+    @Before
+    public void init() throws Exception {
+        file = Files.createTempFile("keyring-", ".properties");
+        write("active=k1\nkey.k1=" + FIRST + "\n");
+        // reloads are triggered by the test, not by the poller
+        keyRing = new JwtKeyRing(file.toString(), Duration.ofHours(1));
+        keyRing.start();
+
+        tokenHelper = new TokenHelper();
+        ReflectionTestUtils.setField(tokenHelper, "timeProvider", new TimeProvider());
+        ReflectionTestUtils.setField(tokenHelper, "EXPIRES_IN", 60);
+        ReflectionTestUtils.setField(tokenHelper, "SECRET", "mySecret");
+        ReflectionTestUtils.setField(tokenHelper, "keyRing", keyRing);
+        device = new DeviceDummy();
+        device.setNormal(true);
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        keyRing.stop();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void signsWithTheActiveKid() {
+        String token = tokenHelper.generateToken("user", device);
+        assertThat(header(token)).contains("\"kid\":\"k1\"");
+        assertThat(tokenHelper.verify(token).isValid()).isTrue();
+    }
+
+    @Test
+    public void rotationKeepsOutstandingTokensValid() throws Exception {
+        String before = tokenHelper.generateToken("user", device);
+
+        write("active=k2\nkey.k2=" + SECOND + "\nkey.k1=" + FIRST + "\n");
+        keyRing.reloadIfChanged();
+        String after = tokenHelper.generateToken("user", device);
+
+        assertThat(header(after)).contains("\"kid\":\"k2\"");
+        assertThat(tokenHelper.verify(after).isValid()).isTrue();
+        assertThat(tokenHelper.verify(before).isValid()).isTrue();
+        // refreshing moves a token to the active key without a new login
+        assertThat(header(tokenHelper.refreshToken(before, device))).contains("\"kid\":\"k2\"");
+    }
+
+    @Test
+    public void retiredKeyRejectsItsTokens() throws Exception {
+        String before = tokenHelper.generateToken("user", device);
+
+        write("active=k2\nkey.k2=" + SECOND + "\n");
+        keyRing.reloadIfChanged();
+
+        assertThat(tokenHelper.verify(before).getStatus()).isEqualTo(TokenStatus.UNKNOWN_KEY);
+    }
+
+    @Test
+    public void brokenFileKeepsThePreviousKeys() throws Exception {
+        String token = tokenHelper.generateToken("user", device);
+
+        write("active=missing\nkey.k2=" + SECOND + "\n");
+        keyRing.reloadIfChanged();
+
+        assertThat(keyRing.activeKey().getKid()).isEqualTo("k1");
+        assertThat(tokenHelper.verify(token).isValid()).isTrue();
+    }
+
+    @Test
+    public void tokensWithoutKidAreRejectedOnceTheRingIsConfigured() {
+        String legacy = legacyToken("mySecret");
+
+        assertThat(header(legacy)).doesNotContain("kid");
+        assertThat(tokenHelper.verify(legacy).getStatus()).isEqualTo(TokenStatus.UNKNOWN_KEY);
+    }
+
+    @Test
+    public void legacyEntryAcceptsTokensWithoutKidUntilRemoved() throws Exception {
+        // jwt.secret moved into the ring, jjwt decodes a String secret as base64 like the ring does
+        write("active=k1\nkey.k1=" + FIRST + "\nkey.old=" + SECOND + "\nlegacy=old\n");
+        keyRing.reloadIfChanged();
+        String legacy = legacyToken(SECOND);
+        String forged = legacyToken("mySecret");
+
+        assertThat(tokenHelper.verify(legacy).isValid()).isTrue();
+        assertThat(tokenHelper.verify(forged).getStatus()).isEqualTo(TokenStatus.INVALID_SIGNATURE);
+
+        write("active=k1\nkey.k1=" + FIRST + "\n");
+        keyRing.reloadIfChanged();
+        assertThat(tokenHelper.verify(legacy).getStatus()).isEqualTo(TokenStatus.UNKNOWN_KEY);
+    }
+
+    // signed with a plain secret, as before the key ring
+    private String legacyToken(String secret) {
+        TokenHelper legacyHelper = new TokenHelper();
+        ReflectionTestUtils.setField(legacyHelper, "timeProvider", new TimeProvider());
+        ReflectionTestUtils.setField(legacyHelper, "EXPIRES_IN", 60);
+        ReflectionTestUtils.setField(legacyHelper, "SECRET", secret);
+        return legacyHelper.generateToken("user", device);
+    }
+
+    private void write(String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static String header(String token) {
+        return new String(Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.'))),
+                StandardCharsets.UTF_8);
+    }
+}
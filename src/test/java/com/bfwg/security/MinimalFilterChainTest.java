@@ -0,0 +1,112 @@
+package com.bfwg.security;
+
+import com.bfwg.security.auth.TokenAuthenticationFilter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.security.web.access.ExceptionTranslationFilter;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.context.SecurityContextHolderFilter;
+import org.springframework.security.web.context.request.async.WebAsyncManagerIntegrationFilter;
+import org.springframework.security.web.servletapi.SecurityContextHolderAwareRequestFilter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.servlet.Filter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"app.security.minimal-chain=true", "warmup.enabled=false"})
+public class MinimalFilterChainTest {
+
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private FilterChainProxy filterChainProxy;
+
+    @Before
+    public void setup() {
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+    }
+
+    @Test
+    public void chainHoldsOnlyWhatTokensNeed() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/whoami");
+        request.setPathInfo("/api/whoami");
+        List<Filter> filters = filterChainProxy.getFilterChains().stream()
+                .filter(chain -> chain.matches(request))
+                .findFirst().get().getFilters();
+
+        assertThat(filters).extracting(filter -> (Object) filter.getClass()).containsExactly(
+                // always added by HttpSecurity, a no-op unless a handler goes async
+                WebAsyncManagerIntegrationFilter.class,
+                SecurityContextHolderFilter.class,
+                TokenAuthenticationFilter.class,
+                // request.getUserPrincipal() for Principal handler arguments
+                SecurityContextHolderAwareRequestFilter.class,
+                ExceptionTranslationFilter.class,
+                AuthorizationFilter.class);
+    }
+
+    @Test
+    public void missingTokenIsUnauthorizedNotForbidden() throws Exception {
+        mvc.perform(get("/api/whoami"))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(get("/api/whoami").header("Authorization", "Bearer junk"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void permittedPathsNeedNoAuthentication() throws Exception {
+        mvc.perform(post("/auth/refresh").header("Authorization", "Bearer junk"))
+                .andExpect(status().is2xxSuccessful());
+    }
+
+    @Test
+    public void tokenAuthenticatesAndIsClearedAfterTheRequest() throws Exception {
+        String token = login("user");
+
+        mvc.perform(get("/api/whoami").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"username\":\"user\"")));
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+
+        mvc.perform(get("/api/user/all").header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+    }
+
+    private String login(String username) throws Exception {
+        String login = mvc.perform(post("/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"" + username + "\",\"password\":\"123\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        Matcher token = Pattern.compile("\"access_token\":\"([^\"]+)\"").matcher(login);
+        assertThat(token.find()).isTrue();
+        return token.group(1);
+    }
+}
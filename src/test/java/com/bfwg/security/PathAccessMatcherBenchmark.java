@@ -0,0 +1,59 @@
+package com.bfwg.security;
+
+import com.bfwg.config.WebSecurityConfig;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single thread decisions per second for the request mix of {@link PathAccessMatcherTest},
+ * the Ant pattern lists evaluated one after the other against the compiled matcher.
+ *
+ * Run with {@code mvn -Pperf test -Dtest=PathAccessMatcherBenchmark}.
+ */
+public class PathAccessMatcherBenchmark {
+
+    private static final long DURATION_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("matcher.seconds", 3));
+
+    @Test
+    public void compareMatchers() {
+        AntPathRules legacy = new AntPathRules();
+        PathAccessMatcher compiled = new WebSecurityConfig().pathAccessMatcher();
+        String[][] requests = PathAccessMatcherTest.REQUESTS;
+        MockHttpServletRequest[] mix = new MockHttpServletRequest[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            mix[i] = PathAccessMatcherTest.request(requests[i][0], requests[i][1]);
+        }
+
+        // warm-up round, then the measured one; the compiled matcher's per-request cache is
+        // cleared as every request would be decided once
+        Decision trie = request -> {
+            request.removeAttribute(PathAccessMatcher.ACCESS_ATTRIBUTE);
+            return compiled.decide(request);
+        };
+        opsPerSecond(mix, legacy::decide);
+        opsPerSecond(mix, trie);
+        double antRate = opsPerSecond(mix, legacy::decide);
+        double trieRate = opsPerSecond(mix, trie);
+        System.out.println(String.format(Locale.ROOT, "ant patterns %,12.0f decisions/s", antRate));
+        System.out.println(String.format(Locale.ROOT, "compiled     %,12.0f decisions/s", trieRate));
+    }
+
+    private static double opsPerSecond(MockHttpServletRequest[] mix, Decision decision) {
+        long operations = 0;
+        long started = System.nanoTime();
+        while (System.nanoTime() - started < DURATION_NANOS) {
+            for (MockHttpServletRequest request : mix) {
+                decision.decide(request);
+            }
+            operations += mix.length;
+        }
+        return operations / ((System.nanoTime() - started) / 1e9);
+    }
+
+    private interface Decision {
+        Object decide(MockHttpServletRequest request);
+    }
+}
@@ -0,0 +1,70 @@
+package com.bfwg.security;
+
+import com.bfwg.config.WebSecurityConfig;
+import com.bfwg.security.PathAccessMatcher.Access;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PathAccessMatcherTest {
+
+    static final String[][] REQUESTS = {
+            {"GET", "/"}, {"GET", "/index.html"}, {"GET", "/app/views/home.html"}, {"GET", "/css/site.css"},
+            {"GET", "/js/app.min.js"}, {"GET", "/webjars/angularjs/1.5.8/angular.js"}, {"GET", "/webjars"},
+            {"GET", "/favicon.ico"}, {"GET", "/.well-known/jwks.json"}, {"POST", "/.well-known/jwks.json"},
+            {"POST", "/auth/login"}, {"GET", "/auth/login"}, {"POST", "/auth/refresh"}, {"POST", "/auth"},
+            {"POST", "/auth/change-password"}, {"POST", "/authx"}, {"POST", "/index.html"},
+            {"GET", "/actuator/health"}, {"GET", "/actuator/health/readiness"}, {"POST", "/actuator/health"},
+            {"GET", "/actuator/metrics"}, {"GET", "/api/whoami"}, {"GET", "/api/user/all"},
+            {"DELETE", "/api/admin/users/1"}, {"GET", "/api/whoami.js"}, {"GET", "/api/whoami.json"},
+            {"GET", "/index.html/"}, {"GET", "/css/site.css/"}, {"GET", "/favicon.ico/x"}};
+
+    private final PathAccessMatcher matcher = new WebSecurityConfig().pathAccessMatcher();
+
+    @Test
+    public void decidesLikeTheAntPatternLists() {
+        AntPathRules legacy = new AntPathRules();
+        for (String[] request : REQUESTS) {
+            assertThat(matcher.decide(request(request[0], request[1])))
+                    .as(request[0] + " " + request[1])
+                    .isEqualTo(legacy.decide(request(request[0], request[1])));
+        }
+    }
+
+    @Test
+    public void strongestAccessWins() {
+        PathAccessMatcher rules = new PathAccessMatcher()
+                .add(Access.PERMIT, "/docs/**")
+                .add(HttpMethod.GET, Access.IGNORE, "/**/*.png")
+                .add(Access.ANONYMOUS, "/docs/public/**");
+
+        assertThat(rules.decide(HttpMethod.GET, "/docs/public/a.png")).isEqualTo(Access.IGNORE);
+        assertThat(rules.decide(HttpMethod.POST, "/docs/public/a.png")).isEqualTo(Access.ANONYMOUS);
+        assertThat(rules.decide(HttpMethod.POST, "/docs/a")).isEqualTo(Access.PERMIT);
+        assertThat(rules.decide(HttpMethod.POST, "/doc")).isEqualTo(Access.AUTHENTICATE);
+    }
+
+    @Test
+    public void decisionIsCachedPerRequest() {
+        MockHttpServletRequest request = request("GET", "/api/whoami");
+        assertThat(matcher.decide(request)).isEqualTo(Access.AUTHENTICATE);
+
+        request.setPathInfo("/index.html");
+        assertThat(matcher.decide(request)).isEqualTo(Access.AUTHENTICATE);
+    }
+
+    @Test
+    public void rejectsPatternsItCannotCompile() {
+        assertThatThrownBy(() -> new PathAccessMatcher().add(Access.PERMIT, "/api/*/users"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    static MockHttpServletRequest request(String method, String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setPathInfo(path);
+        return request;
+    }
+}
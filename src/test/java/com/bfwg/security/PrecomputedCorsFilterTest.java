@@ -0,0 +1,86 @@
+package com.bfwg.security;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.options;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"app.cors.allowed-origins=https://app.example.com", "warmup.enabled=false"})
+public class PrecomputedCorsFilterTest {
+
+    private static final String ORIGIN = "https://app.example.com";
+
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private FilterRegistrationBean<PrecomputedCorsFilter> corsFilter;
+
+    @Before
+    public void setup() {
+        // MockMvc does not pick up registered servlet filters on its own
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .addFilters(corsFilter.getFilter())
+                .apply(springSecurity())
+                .build();
+    }
+
+    @Test
+    public void preflightIsAnsweredWithoutAToken() throws Exception {
+        mvc.perform(options("/api/whoami")
+                .header("Origin", ORIGIN)
+                .header("Access-Control-Request-Method", "GET")
+                .header("Access-Control-Request-Headers", "authorization"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Access-Control-Allow-Origin", ORIGIN))
+                .andExpect(header().string("Access-Control-Allow-Headers", "Authorization, Content-Type"))
+                .andExpect(header().string("Access-Control-Max-Age", "86400"));
+    }
+
+    @Test
+    public void preflightFromOtherOriginsOrForOtherHeadersIsRejected() throws Exception {
+        mvc.perform(options("/api/whoami")
+                .header("Origin", "https://evil.example.com")
+                .header("Access-Control-Request-Method", "GET"))
+                .andExpect(status().isForbidden())
+                .andExpect(header().doesNotExist("Access-Control-Allow-Origin"));
+        mvc.perform(options("/api/whoami")
+                .header("Origin", ORIGIN)
+                .header("Access-Control-Request-Method", "GET")
+                .header("Access-Control-Request-Headers", "X-Custom"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void responsesExposeTheRenewedTokenHeader() throws Exception {
+        mvc.perform(get("/api/whoami").header("Origin", ORIGIN))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().string("Access-Control-Allow-Origin", ORIGIN));
+        // login bypasses the security filter chain and still gets the headers
+        mvc.perform(post("/auth/login")
+                .header("Origin", ORIGIN)
+                .contentType("application/json")
+                .content("{\"username\":\"user\",\"password\":\"123\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Access-Control-Allow-Origin", ORIGIN))
+                .andExpect(header().string("Access-Control-Expose-Headers", containsString("X-Renewed-Token")));
+    }
+}
@@ -0,0 +1,57 @@
+package com.bfwg.security;
+
+import com.bfwg.common.TimeProvider;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Single thread sign and verify throughput of TokenHelper per jwt.algorithm. Verify
+ * includes the pre-checks and claims parsing, as on the request path.
+ *
+ * Run with {@code mvn -Pperf test -Dtest=SigningAlgorithmBenchmark}.
+ */
+public class SigningAlgorithmBenchmark {
+
+    private static final long DURATION_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("signing.seconds", 3));
+
+    @Test
+    public void compareAlgorithms() throws Exception {
+        for (String algorithm : new String[] {"HS512", "ES256", "EdDSA"}) {
+            TokenHelper tokenHelper = new TokenHelper();
+            ReflectionTestUtils.setField(tokenHelper, "timeProvider", new TimeProvider());
+            ReflectionTestUtils.setField(tokenHelper, "EXPIRES_IN", 600);
+            ReflectionTestUtils.setField(tokenHelper, "SECRET", "queenvictoria");
+            ReflectionTestUtils.setField(tokenHelper, "asymmetricKeys", new AsymmetricJwtKeys(algorithm, "", ""));
+            DeviceDummy device = new DeviceDummy();
+            device.setNormal(true);
+
+            String token = tokenHelper.generateToken("user", device);
+            assertThat(tokenHelper.verify(token).isValid()).isTrue();
+
+            // warm-up round, then the measured one
+            opsPerSecond(() -> tokenHelper.generateToken("user", device));
+            opsPerSecond(() -> tokenHelper.verify(token));
+            double sign = opsPerSecond(() -> tokenHelper.generateToken("user", device));
+            double verify = opsPerSecond(() -> tokenHelper.verify(token));
+            System.out.println(String.format(Locale.ROOT, "%-6s sign %,10.0f ops/s   verify %,10.0f ops/s",
+                    algorithm, sign, verify));
+        }
+    }
+
+    private static double opsPerSecond(Runnable operation) {
+        long operations = 0;
+        long started = System.nanoTime();
+        while (System.nanoTime() - started < DURATION_NANOS) {
+            for (int i = 0; i < 100; i++) {
+                operation.run();
+            }
+            operations += 100;
+        }
+        return operations / ((System.nanoTime() - started) / 1e9);
+    }
+}
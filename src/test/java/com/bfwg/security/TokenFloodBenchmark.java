@@ -0,0 +1,124 @@
+package com.bfwg.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Requests per second of /api/whoami when every request carries an invalid token,
+ * plus the raw cost of rejecting each kind of junk in {@link TokenHelper#verify(String)}
+ * next to letting jjwt parse (and throw) as the helper used to.
+ *
+ * Run with {@code mvn -Pperf test -Dtest=TokenFloodBenchmark}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TokenFloodBenchmark {
+
+    private static final long DURATION_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("flood.seconds", 5));
+
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private TokenHelper tokenHelper;
+
+    @Value("${jwt.secret}")
+    private String secret;
+
+    private String[] junk;
+
+    @Before
+    public void setup() {
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+
+        String valid = Jwts.builder()
+                .setSubject("user")
+                .setAudience("web")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 600_000))
+                .signWith(SignatureAlgorithm.HS512, secret)
+                .compact();
+        String expired = Jwts.builder()
+                .setSubject("user")
+                .setAudience("web")
+                .setExpiration(new Date(System.currentTimeMillis() - 600_000))
+                .signWith(SignatureAlgorithm.HS512, secret)
+                .compact();
+        String wrongKey = Jwts.builder()
+                .setSubject("user")
+                .setAudience("web")
+                .setExpiration(new Date(System.currentTimeMillis() + 600_000))
+                .signWith(SignatureAlgorithm.HS512, "someoneElsesSecret")
+                .compact();
+        junk = new String[] {
+                "garbage",
+                valid.substring(0, valid.length() / 2),
+                valid.replace('.', '$'),
+                expired,
+                wrongKey
+        };
+    }
+
+    @Test
+    public void invalidTokenFlood() throws Exception {
+        long requests = 0;
+        long started = System.nanoTime();
+        while (System.nanoTime() - started < DURATION_NANOS) {
+            mvc.perform(get("/api/whoami").header("Authorization", "Bearer " + junk[(int) (requests % junk.length)]))
+                    .andExpect(status().isUnauthorized());
+            requests++;
+        }
+        System.out.println(String.format(Locale.ROOT, "invalid token flood: %,.0f requests/s",
+                requests / ((System.nanoTime() - started) / 1e9)));
+
+        for (String token : junk) {
+            double verify = opsPerSecond(() -> tokenHelper.verify(token));
+            double jjwt = opsPerSecond(() -> {
+                try {
+                    Jwts.parser().setSigningKey(secret).parseClaimsJws(token);
+                } catch (Exception e) {
+                    // rejected
+                }
+            });
+            System.out.println(String.format(Locale.ROOT, "%-22s verify %,12.0f ops/s   jjwt parse %,12.0f ops/s",
+                    tokenHelper.verify(token).getStatus(), verify, jjwt));
+            assertThat(tokenHelper.verify(token).isValid()).isFalse();
+        }
+    }
+
+    private static double opsPerSecond(Runnable operation) {
+        long operations = 0;
+        long started = System.nanoTime();
+        while (System.nanoTime() - started < DURATION_NANOS / 5) {
+            for (int i = 0; i < 1000; i++) {
+                operation.run();
+            }
+            operations += 1000;
+        }
+        return operations / ((System.nanoTime() - started) / 1e9);
+    }
+}
@@ -3,6 +3,8 @@ package com.bfwg.security;
 
 import com.bfwg.common.TimeProvider;
 import com.bfwg.model.User;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
 import org.assertj.core.util.DateUtil;
 import org.junit.Before;
 import org.junit.Test;
@@ -13,7 +15,9 @@ import org.springframework.mobile.device.Device;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
+import java.util.Base64;
 import java.util.Date;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -154,6 +158,80 @@ public class TokenHelperTest {
         assertThat(firstTokenDate).isBefore(refreshedTokenDate);
     }
 
+    @Test
+    public void verifyAcceptsValidToken() {
+        when(timeProviderMock.now()).thenReturn(DateUtil.now());
+        device.setNormal(true);
+
+        TokenVerification verification = tokenHelper.verify(createToken(device));
+
+        assertThat(verification.getStatus()).isEqualTo(TokenStatus.VALID);
+        assertThat(verification.getClaims().getSubject()).isEqualTo(TEST_USERNAME);
+        assertThat(verification.getClaims().getAudience()).isEqualTo(TokenHelper.AUDIENCE_WEB);
+    }
+
+    @Test
+    public void verifyRejectsJunkWithReason() {
+        assertThat(tokenHelper.verify(null).getStatus()).isEqualTo(TokenStatus.MISSING);
+        assertThat(tokenHelper.verify("123").getStatus()).isEqualTo(TokenStatus.MALFORMED);
+        assertThat(tokenHelper.verify(repeat('a', TokenHelper.MAX_TOKEN_LENGTH + 1)).getStatus()).isEqualTo(TokenStatus.MALFORMED);
+        assertThat(tokenHelper.verify(repeat('a', 100) + "." + repeat('b', 100)).getStatus()).isEqualTo(TokenStatus.MALFORMED);
+        assertThat(tokenHelper.verify(repeat('a', 40) + ".b$d." + repeat('c', 86)).getStatus()).isEqualTo(TokenStatus.MALFORMED);
+    }
+
+    @Test
+    public void verifyRejectsOtherAlgorithms() {
+        String token = base64Url("{\"alg\":\"none\"}") + "." + base64Url("{\"sub\":\"" + TEST_USERNAME + "\"}") + "." + repeat('A', 86);
+        assertThat(tokenHelper.verify(token).getStatus()).isEqualTo(TokenStatus.UNSUPPORTED_ALGORITHM);
+    }
+
+    @Test
+    public void verifyRejectsExpiredTokenBeforeCheckingSignature() {
+        when(timeProviderMock.now()).thenReturn(DateUtil.yesterday());
+        String token = createToken(device);
+        // a broken signature does not matter, the expiry is checked first
+        String tampered = token.substring(0, token.lastIndexOf('.') + 1) + repeat('A', 86);
+
+        assertThat(tokenHelper.verify(token).getStatus()).isEqualTo(TokenStatus.EXPIRED);
+        assertThat(tokenHelper.verify(tampered).getStatus()).isEqualTo(TokenStatus.EXPIRED);
+    }
+
+    @Test
+    public void verifyRejectsUnknownAudience() {
+        String token = Jwts.builder()
+                .setSubject(TEST_USERNAME)
+                .setAudience("somewhere-else")
+                .setExpiration(DateUtil.tomorrow())
+                .signWith(SignatureAlgorithm.HS512, "mySecret")
+                .compact();
+        assertThat(tokenHelper.verify(token).getStatus()).isEqualTo(TokenStatus.INVALID_AUDIENCE);
+    }
+
+    @Test
+    public void verifyRejectsForgedSignature() {
+        when(timeProviderMock.now()).thenReturn(DateUtil.now());
+        String token = createToken(device);
+        int signatureStart = token.lastIndexOf('.') + 1;
+        char first = token.charAt(signatureStart);
+        String tampered = token.substring(0, signatureStart) + (first == 'A' ? 'B' : 'A') + token.substring(signatureStart + 1);
+        String otherSecret = Jwts.builder()
+                .setSubject(TEST_USERNAME)
+                .setExpiration(DateUtil.tomorrow())
+                .signWith(SignatureAlgorithm.HS512, "otherSecret")
+                .compact();
+
+        assertThat(tokenHelper.verify(tampered).getStatus()).isEqualTo(TokenStatus.INVALID_SIGNATURE);
+        assertThat(tokenHelper.verify(otherSecret).getStatus()).isEqualTo(TokenStatus.INVALID_SIGNATURE);
+    }
+
+    private static String base64Url(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String repeat(char c, int count) {
+        return new String(new char[count]).replace('\0', c);
+    }
+
     private String createToken(Device device) {
         return tokenHelper.generateToken(TEST_USERNAME, device);
     }
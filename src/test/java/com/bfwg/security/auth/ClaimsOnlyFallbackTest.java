@@ -0,0 +1,204 @@
+package com.bfwg.security.auth;
+
+import com.bfwg.common.CircuitBreaker;
+import com.bfwg.common.TimeProvider;
+import com.bfwg.security.DeviceDummy;
+import com.bfwg.security.TokenHelper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ClaimsOnlyFallbackTest {
+
+    @Autowired
+    private TokenHelper tokenHelper;
+
+    @Autowired
+    private TimeProvider timeProvider;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private final AtomicBoolean storeDown = new AtomicBoolean(true);
+
+    private final AtomicBoolean lookupErrors = new AtomicBoolean();
+
+    @After
+    public void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void readsAreServedFromClaimsOnceLookupsKeepFailing() throws Exception {
+        ClaimsOnlyFallback fallback = fallback(timeProvider, Duration.ofSeconds(10));
+        String token = tokenWithRoles();
+
+        for (int i = 0; i < 3; i++) {
+            Authentication authentication = filter(fallback, "GET", token).authentication;
+            assertThat(authentication).isInstanceOf(ClaimsAuthentication.class);
+            assertThat(authentication.getName()).isEqualTo("user");
+            assertThat(AuthorityUtils.authorityListToSet(authentication.getAuthorities())).containsExactly("ROLE_USER");
+        }
+        // the third request did not wait on the store
+        assertThat(lookups.get()).isEqualTo(2);
+        assertThat(fallback.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void writesOldTokensAndTokensWithoutRolesFailFast() throws Exception {
+        ClaimsOnlyFallback fallback = fallback(timeProvider, Duration.ofSeconds(10));
+        String token = tokenWithRoles();
+
+        assertUnavailable(filter(fallback, "POST", token));
+        assertUnavailable(filter(fallback, "GET", tokenHelper.generateToken("user", device())));
+
+        TimeProvider later = new TimeProvider() {
+            @Override
+            public Date now() {
+                return new Date(System.currentTimeMillis() + Duration.ofMinutes(10).toMillis());
+            }
+        };
+        assertUnavailable(filter(fallback(later, Duration.ofSeconds(10)), "GET", token));
+    }
+
+    @Test
+    public void readsThatNeedTheStoreFailFast() throws Exception {
+        ClaimsOnlyFallback fallback = fallback(timeProvider, Duration.ofSeconds(10));
+        String token = tokenHelper.generateToken("admin", AuthorityUtils.createAuthorityList("ROLE_ADMIN"), device());
+
+        assertUnavailable(filter(fallback, "GET", "/api/user/all", token));
+    }
+
+    @Test
+    public void successfulTrialClosesTheBreaker() throws Exception {
+        ClaimsOnlyFallback fallback = fallback(timeProvider, Duration.ZERO);
+        String token = tokenWithRoles();
+        filter(fallback, "GET", token);
+        filter(fallback, "GET", token);
+        assertThat(fallback.getState()).isNotEqualTo(CircuitBreaker.State.CLOSED);
+
+        storeDown.set(false);
+
+        assertThat(filter(fallback, "GET", token).authentication).isInstanceOf(TokenBasedAuthentication.class);
+        assertThat(fallback.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void trialThatThrowsAnErrorLetsTheNextTrialRun() throws Exception {
+        ClaimsOnlyFallback fallback = fallback(timeProvider, Duration.ZERO);
+        String token = tokenWithRoles();
+        filter(fallback, "GET", token);
+        filter(fallback, "GET", token);
+
+        lookupErrors.set(true);
+        try {
+            filter(fallback, "GET", token);
+        } catch (StackOverflowError expected) {
+            // propagates, the trial slot must still be freed
+        }
+        lookupErrors.set(false);
+        storeDown.set(false);
+
+        assertThat(filter(fallback, "GET", token).authentication).isInstanceOf(TokenBasedAuthentication.class);
+        assertThat(fallback.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void busyPoolDoesNotOpenTheBreaker() {
+        ClaimsOnlyFallback fallback = fallback(timeProvider, Duration.ofSeconds(10));
+        for (int i = 0; i < 3; i++) {
+            fallback.lookupFailed(fallback.allowLookup(),
+                    new CannotCreateTransactionException("Could not open JPA EntityManager",
+                            new SQLTransientConnectionException("pool - Connection is not available, request timed out")));
+        }
+        assertThat(fallback.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        SQLTransientConnectionException unreachable = new SQLTransientConnectionException(
+                "pool - Connection is not available, request timed out", new SQLException("Connection refused"));
+        fallback.lookupFailed(fallback.allowLookup(),
+                new CannotCreateTransactionException("Could not open JPA EntityManager", unreachable));
+        fallback.lookupFailed(fallback.allowLookup(),
+                new CannotCreateTransactionException("Could not open JPA EntityManager", unreachable));
+        assertThat(fallback.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private ClaimsOnlyFallback fallback(TimeProvider time, Duration openFor) {
+        return new ClaimsOnlyFallback(tokenHelper, time, true, Duration.ofMinutes(5),
+                Collections.singletonList("/api/whoami"), 2, openFor, new SimpleMeterRegistry());
+    }
+
+    private Result filter(ClaimsOnlyFallback fallback, String method, String token) throws Exception {
+        return filter(fallback, method, "/api/whoami", token);
+    }
+
+    private Result filter(ClaimsOnlyFallback fallback, String method, String path, String token) throws Exception {
+        UserDetailsService store = username -> {
+            lookups.incrementAndGet();
+            if (lookupErrors.get()) {
+                throw new StackOverflowError();
+            }
+            if (storeDown.get()) {
+                throw new DataAccessResourceFailureException("connection refused");
+            }
+            return userDetailsService.loadUserByUsername(username);
+        };
+        TokenAuthenticationFilter filter = new TokenAuthenticationFilter(tokenHelper, store, null, null, null, fallback);
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.addHeader("Authorization", "Bearer " + token);
+        Result result = new Result();
+        AtomicReference<Authentication> seen = new AtomicReference<>();
+        filter.doFilter(request, result.response,
+                (req, res) -> seen.set(SecurityContextHolder.getContext().getAuthentication()));
+        SecurityContextHolder.clearContext();
+        result.authentication = seen.get();
+        return result;
+    }
+
+    private static void assertUnavailable(Result result) throws Exception {
+        assertThat(result.authentication).isNull();
+        assertThat(result.response.getStatus()).isEqualTo(503);
+        assertThat(result.response.getContentAsString()).contains("user_store_unavailable");
+    }
+
+    private String tokenWithRoles() {
+        return tokenHelper.generateToken("user", AuthorityUtils.createAuthorityList("ROLE_USER"), device());
+    }
+
+    private static DeviceDummy device() {
+        DeviceDummy device = new DeviceDummy();
+        device.setNormal(true);
+        return device;
+    }
+
+    private static final class Result {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        Authentication authentication;
+    }
+}
@@ -0,0 +1,146 @@
+package com.bfwg.security.auth;
+
+import com.bfwg.common.TimeProvider;
+import com.bfwg.security.DeviceDummy;
+import com.bfwg.security.TokenHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"jwt.renewal.enabled=true", "jwt.renewal.threshold=600s", "warmup.enabled=false"})
+public class TokenRenewalTest {
+
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private TokenHelper tokenHelper;
+
+    @Before
+    public void setup() {
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+    }
+
+    @Test
+    public void tokenCloseToExpiryIsRenewedOnce() throws Exception {
+        String token = login();
+
+        String renewed = mvc.perform(get("/api/whoami").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("X-Renewed-Token");
+        assertThat(renewed).isNotBlank();
+
+        // a second request with the old token gets the same renewal instead of a new signature
+        mvc.perform(get("/api/whoami").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Renewed-Token", renewed));
+
+        mvc.perform(get("/api/whoami").header("Authorization", "Bearer " + renewed))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"username\":\"user\"")));
+    }
+
+    @Test
+    public void renewedAndRefreshedTokensCarryTheCurrentRoles() throws Exception {
+        // issued while "user" was still an admin
+        String stale = tokenHelper.generateToken("user",
+                AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN"), device());
+
+        String renewed = mvc.perform(get("/api/whoami").header("Authorization", "Bearer " + stale))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("X-Renewed-Token");
+        assertThat(roles(renewed)).containsExactly("ROLE_USER");
+
+        String refreshed = mvc.perform(post("/auth/refresh").header("Authorization", "Bearer " + stale))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        Matcher token = Pattern.compile("\"access_token\":\"([^\"]+)\"").matcher(refreshed);
+        assertThat(token.find()).isTrue();
+        assertThat(roles(token.group(1))).containsExactly("ROLE_USER");
+    }
+
+    @Test
+    public void fullTrackingWaitsForThePurge() {
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        TimeProvider clock = new TimeProvider() {
+            @Override
+            public Date now() {
+                return new Date(now.get());
+            }
+        };
+        TokenRenewal renewal = new TokenRenewal(tokenHelper, clock, true, Duration.ofMinutes(10),
+                "X-Renewed-Token", 1, Duration.ofHours(1));
+        String first = tokenHelper.generateToken("user", device());
+        String second = tokenHelper.generateToken("admin", device());
+
+        assertThat(renewal.renew(first, tokenHelper.verify(first).getClaims(), null)).isNotNull();
+        assertThat(renewal.renew(second, tokenHelper.verify(second).getClaims(), null)).isNull();
+
+        now.addAndGet(Duration.ofHours(1).toMillis());
+        renewal.purge();
+        assertThat(renewal.tracked()).isZero();
+    }
+
+    @Test
+    public void rejectedTokensAreNotRenewed() throws Exception {
+        mvc.perform(get("/api/whoami").header("Authorization", "Bearer " + login() + "x"))
+                .andExpect(header().doesNotExist("X-Renewed-Token"));
+    }
+
+    private List<String> roles(String token) {
+        List<String> roles = new ArrayList<>();
+        for (GrantedAuthority authority : tokenHelper.getAuthorities(tokenHelper.verify(token).getClaims())) {
+            roles.add(authority.getAuthority());
+        }
+        return roles;
+    }
+
+    private static DeviceDummy device() {
+        DeviceDummy device = new DeviceDummy();
+        device.setNormal(true);
+        return device;
+    }
+
+    private String login() throws Exception {
+        String login = mvc.perform(post("/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"user\",\"password\":\"123\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        Matcher token = Pattern.compile("\"access_token\":\"([^\"]+)\"").matcher(login);
+        assertThat(token.find()).isTrue();
+        return token.group(1);
+    }
+}
@@ -0,0 +1,104 @@
+package com.bfwg.security.auth;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"app.login-cache.enabled=true", "warmup.enabled=false"})
+public class VerifiedCredentialCacheTest {
+
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private VerifiedCredentialCache credentialCache;
+
+    @Before
+    public void setup() {
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+    }
+
+    @Test
+    public void repeatedLoginSkipsTheHash() throws Exception {
+        credentialCache.invalidate("user");
+        double hits = count("hit");
+        login("user", "123").andExpect(status().isOk());
+        login("user", "123").andExpect(status().isOk());
+        login("user", "123").andExpect(status().isOk());
+
+        assertThat(count("hit") - hits).isEqualTo(2);
+    }
+
+    @Test
+    public void otherPasswordsAreStillChecked() throws Exception {
+        login("user", "123").andExpect(status().isOk());
+        double misses = count("miss");
+
+        assertRejected("user", "1234");
+        assertThat(count("miss") - misses).isEqualTo(1);
+    }
+
+    @Test
+    public void passwordChangeInvalidatesTheEntry() throws Exception {
+        String token = token(login("admin", "123").andExpect(status().isOk()));
+        mvc.perform(post("/auth/change-password")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"oldPassword\":\"123\",\"newPassword\":\"456\"}"))
+                .andExpect(status().isAccepted());
+
+        assertRejected("admin", "123");
+        login("admin", "456").andExpect(status().isOk());
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("auth.login.cache").tag("result", result).counter().count();
+    }
+
+    private ResultActions login(String username, String password) throws Exception {
+        return mvc.perform(post("/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}"));
+    }
+
+    // /auth/login bypasses the security filters, so a failed login surfaces as the exception
+    private void assertRejected(String username, String password) {
+        assertThatThrownBy(() -> login(username, password))
+                .hasRootCauseInstanceOf(BadCredentialsException.class);
+    }
+
+    private static String token(ResultActions login) throws Exception {
+        Matcher token = Pattern.compile("\"access_token\":\"([^\"]+)\"")
+                .matcher(login.andReturn().getResponse().getContentAsString());
+        assertThat(token.find()).isTrue();
+        return token.group(1);
+    }
+}
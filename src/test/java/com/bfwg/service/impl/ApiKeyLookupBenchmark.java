@@ -0,0 +1,65 @@
+package com.bfwg.service.impl;
+
+import com.bfwg.model.UserRoleName;
+import com.bfwg.repository.ApiKeyRepository;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Single thread API key authentications per second with 10,000 active keys, against
+ * an in-memory repository so only the index and the HMAC are measured.
+ *
+ * Run with {@code mvn -Pperf test -Dtest=ApiKeyLookupBenchmark}.
+ */
+public class ApiKeyLookupBenchmark {
+
+    private static final long DURATION_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("apikey.seconds", 3));
+
+    private static final int KEYS = 10_000;
+
+    @Test
+    public void authenticate() {
+        ApiKeyRepository repository = (ApiKeyRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ApiKeyRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("save")) {
+                        return args[0];
+                    }
+                    if (method.getName().equals("findByRevokedAtIsNull")) {
+                        return Collections.emptyList();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        ApiKeyServiceImpl service = new ApiKeyServiceImpl(repository, "pepper", Duration.ofHours(1));
+        String[] keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = service.create("job-" + i, EnumSet.of(UserRoleName.ROLE_USER)).getKey();
+        }
+        assertThat(service.authenticate(keys[0]).getName()).isEqualTo("job-0");
+
+        // warm-up round, then the measured one
+        opsPerSecond(service, keys);
+        double rate = opsPerSecond(service, keys);
+        System.out.println(String.format(Locale.ROOT, "api key authenticate %,12.0f ops/s  %,6.0f ns/op",
+                rate, 1e9 / rate));
+    }
+
+    private static double opsPerSecond(ApiKeyServiceImpl service, String[] keys) {
+        long operations = 0;
+        long started = System.nanoTime();
+        while (System.nanoTime() - started < DURATION_NANOS) {
+            for (String key : keys) {
+                service.authenticate(key);
+            }
+            operations += keys.length;
+        }
+        return operations / ((System.nanoTime() - started) / 1e9);
+    }
+}
@@ -0,0 +1,150 @@
+package com.bfwg.service.impl;
+
+import com.bfwg.datasource.ReadYourWrites;
+import com.bfwg.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class CustomUserDetailsServiceTest {
+
+    private static final int CALLERS = 16;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private KnownUsernameFilter knownUsernames;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    public void concurrentLoadsOfOneUserShareOneQuery() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        CustomUserDetailsService service = serviceWithSlowLookups(lookups, null);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<UserDetails> loaded = loadConcurrently(service, "user");
+
+        assertThat(lookups.get()).isEqualTo(1);
+        assertThat(statistics.getQueryExecutionCount()).isEqualTo(1);
+        assertThat(loaded).hasSize(CALLERS).allSatisfy(user -> assertThat(user.getUsername()).isEqualTo("user"));
+        // one request changing its principal must not show in the others
+        assertThat(loaded.stream().map(System::identityHashCode).distinct()).hasSize(CALLERS);
+    }
+
+    @Test
+    public void failureReachesEveryWaiter() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        CustomUserDetailsService service = serviceWithSlowLookups(lookups,
+                new DataAccessResourceFailureException("database down"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<UserDetails>> results = submit(pool, service, "user");
+            for (Future<UserDetails> result : results) {
+                try {
+                    result.get(10, TimeUnit.SECONDS);
+                    fail("expected the lookup failure");
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).isInstanceOf(DataAccessResourceFailureException.class);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(lookups.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void sequentialLoadsAreNotCached() {
+        AtomicInteger lookups = new AtomicInteger();
+        CustomUserDetailsService service = serviceWithSlowLookups(lookups, null);
+        service.loadUserByUsername("user");
+        service.loadUserByUsername("user");
+        assertThat(lookups.get()).isEqualTo(2);
+    }
+
+    private List<UserDetails> loadConcurrently(CustomUserDetailsService service, String username) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<UserDetails> loaded = new ArrayList<>();
+            for (Future<UserDetails> result : submit(pool, service, username)) {
+                loaded.add(result.get(10, TimeUnit.SECONDS));
+            }
+            return loaded;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<Future<UserDetails>> submit(ExecutorService pool, CustomUserDetailsService service, String username)
+            throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<UserDetails>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(pool.submit(() -> {
+                ready.countDown();
+                start.await();
+                return service.loadUserByUsername(username);
+            }));
+        }
+        ready.await();
+        start.countDown();
+        return results;
+    }
+
+    /*
+     * The repository lookup is held back long enough for every caller to arrive
+     * while it is in flight.
+     */
+    private CustomUserDetailsService serviceWithSlowLookups(AtomicInteger lookups, RuntimeException failure) {
+        UserRepository slow = (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findByUsername")) {
+                        lookups.incrementAndGet();
+                        Thread.sleep(300);
+                        if (failure != null) {
+                            throw failure;
+                        }
+                    }
+                    try {
+                        return method.invoke(userRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        // own ReadYourWrites, other tests in this context change the password of "user"
+        return new CustomUserDetailsService(slow, knownUsernames, new ReadYourWrites(Duration.ofSeconds(10)),
+                Duration.ofSeconds(5));
+    }
+
+}
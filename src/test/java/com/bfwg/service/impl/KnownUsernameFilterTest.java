@@ -0,0 +1,150 @@
+package com.bfwg.service.impl;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "spring.jpa.properties.hibernate.generate_statistics=true",
+        "app.username-filter.enabled=true" })
+public class KnownUsernameFilterTest {
+
+    @Autowired
+    private KnownUsernameFilter knownUsernames;
+
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void knowsImportedUsersIgnoringCase() {
+        assertThat(knownUsernames.mightExist("user")).isTrue();
+        assertThat(knownUsernames.mightExist("ADMIN")).isTrue();
+        assertThat(knownUsernames.mightExist("nobody")).isFalse();
+        assertThat(knownUsernames.mightExist(null)).isFalse();
+    }
+
+    @Test
+    public void knowsUsersAddedAfterTheBuild() {
+        assertThat(knownUsernames.mightExist("added-later")).isFalse();
+        knownUsernames.add("Added-Later");
+        assertThat(knownUsernames.mightExist("added-later")).isTrue();
+    }
+
+    @Test
+    public void periodicRebuildPicksUpUsersCreatedElsewhere() throws Exception {
+        KnownUsernameFilter filter = new KnownUsernameFilter(jdbcTemplate, true, Duration.ofMillis(50));
+        filter.start();
+        try {
+            assertThat(filter.mightExist("created-elsewhere")).isFalse();
+            // another instance, or plain SQL
+            jdbcTemplate.update("INSERT INTO USERS (id, username, normalized_username, password, enabled) "
+                    + "VALUES (9001, 'Created-Elsewhere', 'created-elsewhere', 'x', true)");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!filter.mightExist("created-elsewhere") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(filter.mightExist("created-elsewhere")).isTrue();
+        } finally {
+            filter.stop();
+            jdbcTemplate.update("DELETE FROM USERS WHERE id = 9001");
+        }
+    }
+
+    @Test
+    public void usersAddedDuringARebuildAreKept() throws Exception {
+        AtomicInteger scans = new AtomicInteger();
+        CountDownLatch scanning = new CountDownLatch(1);
+        CountDownLatch added = new CountDownLatch(1);
+        KnownUsernameFilter filter = new KnownUsernameFilter(new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch) {
+                if (scans.incrementAndGet() > 1) {
+                    // hold the second scan until the user was added
+                    scanning.countDown();
+                    try {
+                        added.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.query(sql, rch);
+            }
+        }, true, Duration.ofHours(1));
+        filter.start();
+        try {
+            Thread rebuild = new Thread(filter::rebuild);
+            rebuild.start();
+            assertThat(scanning.await(5, TimeUnit.SECONDS)).isTrue();
+            // neither waits for the scan nor gets lost in the swap
+            filter.add("Added-Mid-Scan");
+            added.countDown();
+            rebuild.join(5000);
+            assertThat(filter.mightExist("added-mid-scan")).isTrue();
+        } finally {
+            filter.stop();
+        }
+    }
+
+    @Test
+    public void disabledFilterRejectsNothing() {
+        KnownUsernameFilter filter = new KnownUsernameFilter(jdbcTemplate, false, Duration.ofMillis(50));
+        filter.start();
+        try {
+            assertThat(filter.mightExist("created-elsewhere")).isTrue();
+            filter.add("created-here");
+            assertThat(filter.mightExist("nobody")).isTrue();
+        } finally {
+            filter.stop();
+        }
+    }
+
+    @Test
+    public void rejectsUnknownUsernamesWithoutQuerying() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        try {
+            userDetailsService.loadUserByUsername("definitely-not-a-user");
+            fail("expected UnknownUsernameException");
+        } catch (UnknownUsernameException e) {
+            assertThat(e.getStackTrace()).isEmpty();
+        }
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    public void filterStaysAccurateAtScale() {
+        KnownUsernameFilter.BloomFilter filter = new KnownUsernameFilter.BloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.put("member-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(filter.mightContain("member-" + i)).isTrue();
+            if (filter.mightContain("stranger-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(2_000);
+    }
+}
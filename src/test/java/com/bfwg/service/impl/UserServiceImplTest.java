@@ -0,0 +1,190 @@
+package com.bfwg.service.impl;
+
+import com.bfwg.model.User;
+import com.bfwg.repository.UserRepository;
+import com.bfwg.service.UserService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.bfwg.security.auth.TokenBasedAuthentication;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class UserServiceImplTest {
+
+    // hash of "123" from import.sql
+    private static final String ORIGINAL_HASH = "$2a$04$Vbug2lwwJGrvUXTj6z7ff.97IzVBkrJ1XfApfGNl.Z695zqcnPYra";
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @Before
+    public void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @After
+    public void restorePassword() {
+        SecurityContextHolder.clearContext();
+        jdbcTemplate.update("UPDATE USERS SET password = ? WHERE username = 'user'", ORIGINAL_HASH);
+    }
+
+    @Test
+    public void findByUsernameIgnoresCase() {
+        assertThat(userService.findByUsername("USER").getUsername()).isEqualTo("user");
+        assertThat(userService.findByUsername("Admin").getUsername()).isEqualTo("admin");
+    }
+
+    @Test
+    public void changePasswordIssuesSingleUpdate() {
+        authenticateAs(userRepository.findByUsername("user"));
+        statistics.clear();
+
+        userService.changePassword("123", "456");
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        User reloaded = userRepository.findByUsername("user");
+        assertThat(passwordEncoder.matches("456", reloaded.getPassword())).isTrue();
+        assertThat(reloaded.getLastPasswordResetDate()).isNotNull();
+    }
+
+    @Test
+    public void changePasswordLeavesThePrincipalAlone() {
+        User principal = userRepository.findByUsername("user");
+        String hash = principal.getPassword();
+        authenticateAs(principal);
+
+        userService.changePassword("123", "456");
+
+        // requests sharing the principal keep a consistent view of the user they loaded
+        assertThat(principal.getPassword()).isEqualTo(hash);
+    }
+
+    @Test
+    public void wrongOldPasswordDoesNotTouchTheDatabase() {
+        authenticateAs(userRepository.findByUsername("user"));
+        statistics.clear();
+
+        try {
+            userService.changePassword("wrong", "456");
+            fail("expected BadCredentialsException");
+        } catch (BadCredentialsException expected) {
+        }
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    public void wrongOldPasswordIsNeverFollowedByHashingTheNewOne() {
+        authenticateAs(userRepository.findByUsername("user"));
+        AtomicInteger encoded = new AtomicInteger();
+        Object target = AopTestUtils.getTargetObject(userService);
+        ReflectionTestUtils.setField(target, "passwordEncoder", new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                encoded.incrementAndGet();
+                return passwordEncoder.encode(rawPassword);
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return passwordEncoder.matches(rawPassword, encodedPassword);
+            }
+        });
+        try {
+            userService.changePassword("wrong", "456");
+            fail("expected BadCredentialsException");
+        } catch (BadCredentialsException expected) {
+        } finally {
+            ReflectionTestUtils.setField(target, "passwordEncoder", passwordEncoder);
+        }
+
+        assertThat(encoded.get()).isZero();
+    }
+
+    @Test
+    public void concurrentChangesLetExactlyOneWin() throws Exception {
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            // every request carries its own copy of the principal, as separate filter passes would
+            User principal = userRepository.findByUsername("user");
+            String newPassword = "new-" + i;
+            results.add(pool.submit((Callable<Void>) () -> {
+                authenticateAs(principal);
+                start.await();
+                try {
+                    userService.changePassword("123", newPassword);
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+
+        int succeeded = 0;
+        int conflicted = 0;
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+                succeeded++;
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(ConcurrencyFailureException.class);
+                conflicted++;
+            }
+        }
+        pool.shutdown();
+
+        assertThat(succeeded).isEqualTo(1);
+        assertThat(conflicted).isEqualTo(threads - 1);
+    }
+
+    private void authenticateAs(User user) {
+        SecurityContextHolder.getContext().setAuthentication(new TokenBasedAuthentication(user));
+    }
+}
@@ -0,0 +1,50 @@
+package com.bfwg.warmup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "warmup.enabled=true")
+public class WarmupRunnerTest {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private WarmupHealthIndicator healthIndicator;
+
+    @Test
+    public void outOfServiceUntilCompleted() {
+        assertThat(new WarmupHealthIndicator().health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+    }
+
+    @Test
+    public void completesEveryStepBeforeReadiness() throws Exception {
+        Health health = healthIndicator.health();
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        for (String step : new String[] { "connections", "tokens", "lookups", "passwords", "serialization" }) {
+            // a count, not a failure, and at least one iteration each
+            assertThat(health.getDetails().get(step)).as(step).isInstanceOf(Integer.class);
+            assertThat((Integer) health.getDetails().get(step)).as(step).isPositive();
+        }
+
+        MockMvc mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+        mvc.perform(get("/actuator/health/readiness"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("UP"));
+    }
+}